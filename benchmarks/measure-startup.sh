@@ -0,0 +1,93 @@
+#!/usr/bin/env bash
+# Время до первого успешного ответа GET /api/v1/employees: обычный старт, только Spring AOT и AOT + AppCDS.
+#
+# Перед запуском соберите приложение с профилем fast-startup (из корня проекта):
+#   mvn -Pfast-startup package -DskipTests
+# Затем:
+#   benchmarks/measure-startup.sh [число запусков, по умолчанию 5]
+#
+# Для каждого режима выводятся все замеры и медиана в миллисекундах. База - Postgres в Docker со схемой
+# из src/test/resources/db/init.sql, она поднимается один раз на все запуски. Без Docker можно передать
+# адрес уже готовой базы с этой схемой: DB_URL=jdbc:postgresql://host:port/db (пользователь postgres/postgres123)
+set -Eeuo pipefail
+
+RUNS="${1:-5}"
+PROJECT_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+TARGET_DIR="$PROJECT_DIR/target"
+FAST_DIR="$TARGET_DIR/fast-startup"
+APP_PORT="${APP_PORT:-18080}"
+DB_PORT="${DB_PORT:-55432}"
+DB_CONTAINER="demo-startup-postgres"
+DB_URL="${DB_URL:-}"
+URL="http://localhost:$APP_PORT/api/v1/employees?limit=1"
+
+JAR="$(find "$TARGET_DIR" -maxdepth 1 -name '*-exec.jar' | head -n 1)"
+if [ -z "$JAR" ] || [ ! -f "$FAST_DIR/application.jsa" ]; then
+    echo "Run 'mvn -Pfast-startup package -DskipTests' first" >&2
+    exit 1
+fi
+JAR_NAME="$(basename "$JAR")"
+
+APP_ARGS=(
+    "--server.port=$APP_PORT"
+    "--spring.datasource.url=${DB_URL:-jdbc:postgresql://localhost:$DB_PORT/testdb}"
+    "--spring.datasource.username=postgres"
+    "--spring.datasource.password=postgres123"
+)
+
+if [ -z "$DB_URL" ]; then
+    cleanup() {
+        docker rm -f "$DB_CONTAINER" > /dev/null 2>&1 || true
+    }
+    trap cleanup EXIT
+
+    docker run -d --name "$DB_CONTAINER" -p "$DB_PORT:5432" \
+        -e POSTGRES_DB=testdb -e POSTGRES_PASSWORD=postgres123 \
+        -v "$PROJECT_DIR/src/test/resources/db/init.sql:/docker-entrypoint-initdb.d/init.sql:ro" \
+        postgres:15 > /dev/null
+    until docker exec "$DB_CONTAINER" pg_isready -U postgres -d testdb -h localhost > /dev/null 2>&1; do
+        sleep 0.5
+    done
+fi
+
+# Время от запуска JVM до первого ответа 200, в миллисекундах
+measure() {
+    local dir="$1"
+    shift
+    local start end pid
+    start=$(date +%s%N)
+    (cd "$dir" && exec java "$@" "${APP_ARGS[@]}" > /dev/null 2>&1) &
+    pid=$!
+    until curl -sf -o /dev/null "$URL"; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "Application exited before serving a request" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    echo $(((end - start) / 1000000))
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print (NR % 2) ? values[(NR + 1) / 2] : int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+run_mode() {
+    local name="$1"
+    shift
+    local results=()
+    for _ in $(seq "$RUNS"); do
+        results+=("$(measure "$@")")
+    done
+    printf '%-10s median %6s ms   runs: %s\n' "$name" "$(printf '%s\n' "${results[@]}" | median)" "${results[*]}"
+}
+
+# Первый запуск не учитывается: он прогревает файловый кэш ОС и базу
+measure "$TARGET_DIR" -jar "$JAR_NAME" > /dev/null
+
+run_mode default "$TARGET_DIR" -jar "$JAR_NAME"
+run_mode aot "$TARGET_DIR" -Dspring.aot.enabled=true -jar "$JAR_NAME"
+run_mode aot+cds "$FAST_DIR" -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar "$JAR_NAME"
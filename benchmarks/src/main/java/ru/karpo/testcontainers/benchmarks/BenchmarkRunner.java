@@ -0,0 +1,69 @@
+package ru.karpo.testcontainers.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Запуск JMH с профилировщиком gc (alloc rate, байт на операцию) и сохранением результата в JSON,
+ * чтобы прогоны можно было сравнивать. Аргументы командной строки - обычные аргументы JMH и имеют приоритет.
+ * <p>
+ * Если в прогон попал EmployeeFormatBenchmark, размеры тела для его параметров пишутся отдельно в CSV
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+    private static final String FORMAT_SIZES_FILE = "target/format-sizes.csv";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        writeFormatSizes(new Runner(options.build()).run());
+    }
+
+    private static void writeFormatSizes(Collection<RunResult> results) throws IOException {
+        String prefix = EmployeeFormatBenchmark.class.getName() + ".";
+        Set<List<String>> formatAndSize = new LinkedHashSet<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            if (params.getBenchmark().startsWith(prefix)) {
+                formatAndSize.add(List.of(params.getParam("format"), params.getParam("size")));
+            }
+        }
+        if (formatAndSize.isEmpty()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("format,size,encoded,gzip,zstd");
+        for (List<String> params : formatAndSize) {
+            EmployeeFormatBenchmark.PayloadSizes sizes =
+                    EmployeeFormatBenchmark.payloadSizes(params.get(0), Integer.parseInt(params.get(1)));
+            lines.add(String.join(",", params.get(0), params.get(1), String.valueOf(sizes.encoded()),
+                    String.valueOf(sizes.gzip()), String.valueOf(sizes.zstd())));
+        }
+        Files.write(Path.of(FORMAT_SIZES_FILE), lines);
+        System.out.println("Format sizes: " + FORMAT_SIZES_FILE);
+    }
+}
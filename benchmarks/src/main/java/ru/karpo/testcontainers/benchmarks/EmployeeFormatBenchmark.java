@@ -0,0 +1,109 @@
+package ru.karpo.testcontainers.benchmarks;
+
+import com.github.luben.zstd.Zstd;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import ru.karpo.testcontainers.format.EmployeeProtobufHttpMessageConverter;
+import ru.karpo.testcontainers.model.Employee;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Страница GET /employees в разных форматах теми же конвертерами, что регистрирует FormatConfiguration.
+ * <p>
+ * encode - кодирование страницы, gzip и zstd - сжатие уже закодированной страницы с уровнями, которые использует
+ * приложение (уровень Deflater по умолчанию у Tomcat и compression.zstd.level = 3). Размеры тела
+ * без сжатия и после него не замеряются, их после прогона пишет BenchmarkRunner, см. {@link #payloadSizes}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeFormatBenchmark {
+
+    private static final Type LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Employee.class).getType();
+    private static final int ZSTD_LEVEL = 3;
+
+    @Param({"json", "cbor", "smile", "protobuf"})
+    public String format;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private GenericHttpMessageConverter<Object> converter;
+    private List<Employee> employees;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        converter = converter(format);
+        employees = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Employee employee = new Employee("John" + i, "Doe" + i, "john.doe" + i + "@example.com");
+            employee.setId(i);
+            employees.add(employee);
+        }
+        payload = encode();
+    }
+
+    /**
+     * Размеры страницы в байтах для одной комбинации параметров: без сжатия, gzip и zstd
+     */
+    static PayloadSizes payloadSizes(String format, int size) throws IOException {
+        EmployeeFormatBenchmark benchmark = new EmployeeFormatBenchmark();
+        benchmark.format = format;
+        benchmark.size = size;
+        benchmark.setUp();
+        return new PayloadSizes(benchmark.payload.length, benchmark.gzip().length, benchmark.zstd().length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(employees, LIST_TYPE, null, message);
+        return message.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public byte[] gzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length);
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] zstd() {
+        return Zstd.compress(payload, ZSTD_LEVEL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static GenericHttpMessageConverter<Object> converter(String format) {
+        Object converter = switch (format) {
+            case "json" -> new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+            case "cbor" -> new MappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder.cbor().build());
+            case "smile" -> new MappingJackson2SmileHttpMessageConverter(Jackson2ObjectMapperBuilder.smile().build());
+            case "protobuf" -> new EmployeeProtobufHttpMessageConverter();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        return (GenericHttpMessageConverter<Object>) converter;
+    }
+
+    record PayloadSizes(int encoded, int gzip, int zstd) {
+    }
+}
@@ -0,0 +1,70 @@
+package ru.karpo.testcontainers.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.karpo.testcontainers.model.Employee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация ответов GET /employees/{id} и GET /employees тем же ObjectMapper, что настраивает Spring Boot
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter listWriter;
+    private Employee employee;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listWriter = objectMapper.writerFor(new TypeReference<List<Employee>>() {
+        });
+        employee = employee(1);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"1", "100", "1000"})
+        public int size;
+
+        public List<Employee> employees;
+
+        @Setup
+        public void setUp() {
+            employees = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                employees.add(employee(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeEmployee() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(employee);
+    }
+
+    @Benchmark
+    public byte[] serializeEmployeeList(Page page) throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(page.employees);
+    }
+
+    private static Employee employee(long id) {
+        Employee employee = new Employee("John" + id, "Doe" + id, "john.doe" + id + "@example.com");
+        employee.setId(id);
+        return employee;
+    }
+}
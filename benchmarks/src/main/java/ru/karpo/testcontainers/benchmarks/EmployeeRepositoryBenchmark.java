@@ -0,0 +1,72 @@
+package ru.karpo.testcontainers.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import ru.karpo.testcontainers.DemoApplication;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById и save репозитория против Postgres в контейнере (нужен Docker и образ postgres-tls,
+ * см. src/test/resources/docker/docker-build.sh). Контекст Spring поднимается без веб-сервера
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeRepositoryBenchmark {
+
+    private PostgreSQLContainer<?> postgresContainer;
+    private ConfigurableApplicationContext context;
+    private EmployeeRepository repository;
+    private long existingId;
+    //email уникален; состояние Scope.Benchmark, поэтому бенчмарк запускается в один поток
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        postgresContainer = new PostgreSQLContainer<>(DockerImageName.parse("postgres-tls:latest")
+                .asCompatibleSubstituteFor("postgres"))
+                .withDatabaseName("testdb")
+                .withUsername("postgres")
+                .withPassword("postgres123")
+                .withCommand("-c", "log_destination=stderr", "-c", "logging_collector=off")
+                .withInitScript("db/init.sql");
+        postgresContainer.start();
+
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + postgresContainer.getJdbcUrl(),
+                        "--spring.datasource.username=" + postgresContainer.getUsername(),
+                        "--spring.datasource.password=" + postgresContainer.getPassword(),
+                        "--spring.jpa.show-sql=false");
+        repository = context.getBean(EmployeeRepository.class);
+        existingId = repository.findAll().get(0).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        postgresContainer.stop();
+    }
+
+    @Benchmark
+    public Optional<Employee> findById() {
+        return repository.findById(existingId);
+    }
+
+    @Benchmark
+    public Employee save() {
+        long n = sequence++;
+        return repository.save(new Employee("Ann", "Lee", "ann.lee" + n + "@example.com"));
+    }
+}
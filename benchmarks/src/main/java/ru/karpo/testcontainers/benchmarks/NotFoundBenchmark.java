@@ -0,0 +1,92 @@
+package ru.karpo.testcontainers.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import ru.karpo.testcontainers.exceptions.ErrorDetails;
+import ru.karpo.testcontainers.exceptions.GlobalExceptionHandler;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость ответа 404 от создания исключения до записи тела.
+ * <p>
+ * legacyNotFound повторяет прежний путь: исключение со стеком, ErrorDetails с Date и описанием запроса
+ * и сериализация Jackson. fastNotFound - текущий: исключение без стека и problem+json из заранее
+ * закодированных частей. Исключение бросается на глубине {@code depth} кадров, потому что стоимость
+ * заполнения стека растёт с глубиной, а в Spring MVC до контроллера больше сотни кадров.
+ * Байт на операцию показывает профилировщик gc (gc.alloc.rate.norm)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotFoundBenchmark {
+
+    private static final String MESSAGE = "Employee not found for this id :: 42";
+
+    @Param({"10", "150"})
+    public int depth;
+
+    private GlobalExceptionHandler handler;
+    private ObjectMapper objectMapper;
+    private WebRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        handler = new GlobalExceptionHandler(new SimpleMeterRegistry());
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/employees/42"));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public byte[] legacyNotFound() throws IOException {
+        try {
+            throwAt(depth, true);
+            throw new IllegalStateException();
+        } catch (Exception ex) {
+            ResponseEntity<?> entity = new ResponseEntity<>(
+                    new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false)),
+                    HttpStatus.NOT_FOUND);
+            response.reset();
+            objectMapper.writeValue(response.getOutputStream(), entity.getBody());
+            return response.getContentAsByteArray();
+        }
+    }
+
+    @Benchmark
+    public byte[] fastNotFound() throws IOException {
+        try {
+            throwAt(depth, false);
+            throw new IllegalStateException();
+        } catch (ResourceNotFoundException ex) {
+            response.reset();
+            handler.resourceNotFoundException(ex, response);
+            return response.getContentAsByteArray();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void throwAt(int depth, boolean withStackTrace) throws Exception {
+        if (depth > 0) {
+            throwAt(depth - 1, withStackTrace);
+            return;
+        }
+        throw withStackTrace ? new Exception(MESSAGE) : new ResourceNotFoundException(MESSAGE);
+    }
+}
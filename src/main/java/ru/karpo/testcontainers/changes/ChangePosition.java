@@ -0,0 +1,44 @@
+package ru.karpo.testcontainers.changes;
+
+import java.util.Comparator;
+
+/**
+ * Позиция в ленте изменений: транзакция, записавшая изменение, и номер строки в employee_changes.
+ * <p>
+ * Id выдаются до коммита, поэтому по одному id строка завершившейся позже транзакции могла бы оказаться
+ * позади уже прочитанных. Читаются только завершённые транзакции в порядке (xid, id), и всё, что станет
+ * видимым позже, гарантированно окажется дальше прочитанной позиции. Значение SSE id - {@code <xid>-<id>}
+ */
+public record ChangePosition(long xid, long id) implements Comparable<ChangePosition> {
+
+    public static final ChangePosition ZERO = new ChangePosition(0, 0);
+
+    private static final Comparator<ChangePosition> ORDER = Comparator.comparingLong(ChangePosition::xid)
+            .thenComparingLong(ChangePosition::id);
+
+    /**
+     * @throws IllegalArgumentException если значение не было выдано лентой
+     */
+    public static ChangePosition parse(String value) {
+        int separator = value.indexOf('-');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Invalid change position: " + value);
+        }
+        try {
+            return new ChangePosition(Long.parseLong(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid change position: " + value);
+        }
+    }
+
+    @Override
+    public int compareTo(ChangePosition other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public String toString() {
+        return xid + "-" + id;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.karpo.testcontainers.changes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Изменение сотрудника из employee_changes. Для удаления известны только id и последняя версия
+ *
+ * @param operation INSERT, UPDATE или DELETE (TG_OP триггера)
+ */
+public record EmployeeChange(ChangePosition position, String operation, long employeeId, String firstName,
+                             String lastName, String email, Long version) {
+
+    /**
+     * Имя SSE-события: created, updated или deleted
+     */
+    public String eventName() {
+        return switch (operation) {
+            case "INSERT" -> "created";
+            case "UPDATE" -> "updated";
+            case "DELETE" -> "deleted";
+            default -> throw new IllegalStateException("Unknown operation " + operation);
+        };
+    }
+
+    /**
+     * Поля как в ответе GET /employees/{id} и версия, совпадающая с ETag
+     */
+    public Map<String, Object> payload() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("id", employeeId);
+        if (!"DELETE".equals(operation)) {
+            payload.put("firstName", firstName);
+            payload.put("lastName", lastName);
+            payload.put("email", email);
+        }
+        payload.put("version", version);
+        return payload;
+    }
+}
@@ -0,0 +1,316 @@
+package ru.karpo.testcontainers.changes;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Лента изменений сотрудников для подписчиков SSE.
+ * <p>
+ * Триггеры на employees пишут изменения в employee_changes и будят слушателя через NOTIFY employee_changes.
+ * Один поток держит соединение с LISTEN, дочитывает новые изменения и раскладывает их по очередям подписчиков.
+ * Очередь подписчика ограничена: если клиент не успевает, очередь сбрасывается, и он дочитывает пропущенное
+ * из таблицы, поэтому медленный клиент не держит память и не теряет события. Отправка идёт в отдельных потоках,
+ * чтобы зависший сокет одного клиента не задерживал остальных
+ */
+@Component
+public class EmployeeChangeFeed implements SmartLifecycle {
+
+    public static final String CHANNEL = "employee_changes";
+
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeChangeFeed.class);
+
+    private final EmployeeChangeStore store;
+    private final DataSource dataSource;
+    private final int bufferSize;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration heartbeatInterval;
+    private final Duration retention;
+    private final Duration emitterTimeout;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService listener = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "employee-changes-listen");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService senders = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "employee-changes-send-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile boolean running;
+    private volatile ChangePosition head = ChangePosition.ZERO;
+
+    public EmployeeChangeFeed(EmployeeChangeStore store, DataSource dataSource, MeterRegistry registry,
+                              @Value("${employees.changes.buffer-size:256}") int bufferSize,
+                              @Value("${employees.changes.batch-size:500}") int batchSize,
+                              @Value("${employees.changes.poll-interval:5s}") Duration pollInterval,
+                              @Value("${employees.changes.heartbeat-interval:15s}") Duration heartbeatInterval,
+                              @Value("${employees.changes.retention:24h}") Duration retention,
+                              @Value("${employees.changes.emitter-timeout:30m}") Duration emitterTimeout) {
+        this.store = store;
+        this.dataSource = dataSource;
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.heartbeatInterval = heartbeatInterval;
+        this.retention = retention;
+        this.emitterTimeout = emitterTimeout;
+        Gauge.builder("employees.changes.subscribers", subscribers, Set::size).register(registry);
+    }
+
+    /**
+     * @param lastEventId последний полученный клиентом id события или null, чтобы получать изменения с текущего момента
+     * @throws IllegalArgumentException если {@code lastEventId} не был выдан лентой
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        boolean resume = lastEventId != null && !lastEventId.isBlank();
+        ChangePosition position = resume ? ChangePosition.parse(lastEventId.trim()) : head;
+        boolean expired = resume && store.isExpired(position);
+        Subscriber subscriber = new Subscriber(new SseEmitter(emitterTimeout.toMillis()),
+                expired ? store.head() : position, expired);
+        subscribers.add(subscriber);
+        subscriber.schedule();
+        return subscriber.emitter;
+    }
+
+    @Override
+    public void start() {
+        head = store.head();
+        running = true;
+        listener.execute(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listener.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Соединение периодически возвращается в пул, чтобы Hikari мог заменить его по max-lifetime
+     * (и обновить динамические креды Vault)
+     */
+    private void listen() {
+        Instant nextPurge = Instant.now();
+        while (running) {
+            Instant reconnectAt = Instant.now().plus(Duration.ofMinutes(10));
+            Instant nextHeartbeat = Instant.now().plus(heartbeatInterval);
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                execute(connection, "LISTEN " + CHANNEL);
+                try {
+                    dispatch();
+                    while (running && Instant.now().isBefore(reconnectAt)) {
+                        //уведомления только будят поток, изменения всегда читаются из таблицы
+                        pgConnection.getNotifications((int) pollInterval.toMillis());
+                        dispatch();
+                        if (Instant.now().isAfter(nextHeartbeat)) {
+                            subscribers.forEach(Subscriber::heartbeat);
+                            nextHeartbeat = Instant.now().plus(heartbeatInterval);
+                        }
+                        if (Instant.now().isAfter(nextPurge)) {
+                            int purged = store.purgeBefore(Instant.now().minus(retention));
+                            logger.debug("Purged {} employee changes", purged);
+                            nextPurge = Instant.now().plus(Duration.ofMinutes(1));
+                        }
+                    }
+                } finally {
+                    //соединение вернётся в пул, подписка на канал не должна остаться на нём
+                    execute(connection, "UNLISTEN *");
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Employee change listener failed, reconnecting in {}", pollInterval, e);
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch() {
+        if (subscribers.isEmpty()) {
+            //новые подписчики всё равно начинают с дочитывания из таблицы
+            head = store.head();
+            return;
+        }
+        List<EmployeeChange> changes;
+        do {
+            changes = store.readAfter(head, batchSize);
+            if (changes.isEmpty()) {
+                return;
+            }
+            head = changes.get(changes.size() - 1).position();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(changes);
+            }
+        } while (changes.size() == batchSize);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Состояние одного SSE-клиента. В emitter пишет только один поток за раз (флаг scheduled)
+     */
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<EmployeeChange> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * Последнее отправленное клиенту изменение
+         */
+        private volatile ChangePosition position;
+        /**
+         * Очередь переполнялась: пропущенное дочитывается из таблицы
+         */
+        private volatile boolean overflow;
+        private volatile boolean reset;
+        private volatile boolean heartbeat;
+        private volatile boolean closed;
+
+        /**
+         * Подписчик начинает с дочитывания из таблицы: так он не пропустит изменения,
+         * разосланные между выбором стартовой позиции и регистрацией
+         */
+        Subscriber(SseEmitter emitter, ChangePosition position, boolean reset) {
+            this.emitter = emitter;
+            this.position = position;
+            this.reset = reset;
+            this.overflow = true;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(this::close);
+            emitter.onError(e -> close());
+        }
+
+        void offer(List<EmployeeChange> changes) {
+            for (EmployeeChange change : changes) {
+                if (!queue.offer(change)) {
+                    overflow = true;
+                    break;
+                }
+            }
+            schedule();
+        }
+
+        void heartbeat() {
+            heartbeat = true;
+            schedule();
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RuntimeException e) {
+                    //пул отправки остановлен вместе с лентой
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                do {
+                    if (reset) {
+                        reset = false;
+                        //позиция клиента старше срока хранения: он должен перечитать список целиком
+                        emitter.send(SseEmitter.event().id(position.toString()).name("reset").data("{}"));
+                    }
+                    if (overflow) {
+                        overflow = false;
+                        queue.clear();
+                        replay();
+                    }
+                    EmployeeChange change;
+                    while (!overflow && (change = queue.poll()) != null) {
+                        if (change.position().compareTo(position) > 0) {
+                            send(change);
+                        }
+                    }
+                    if (heartbeat) {
+                        heartbeat = false;
+                        emitter.send(SseEmitter.event().comment(""));
+                    }
+                    scheduled.set(false);
+                } while (!closed && (!queue.isEmpty() || overflow || reset || heartbeat)
+                        && scheduled.compareAndSet(false, true));
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Employee change subscriber disconnected", e);
+                emitter.completeWithError(e);
+                close();
+            }
+        }
+
+        private void replay() throws IOException {
+            List<EmployeeChange> changes;
+            do {
+                changes = store.readAfter(position, batchSize);
+                for (EmployeeChange change : changes) {
+                    send(change);
+                }
+            } while (!closed && changes.size() == batchSize);
+        }
+
+        private void send(EmployeeChange change) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(change.position().toString())
+                    .name(change.eventName())
+                    .data(change.payload(), MediaType.APPLICATION_JSON));
+            position = change.position();
+        }
+
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.karpo.testcontainers.changes;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.karpo.testcontainers.crypto.TransitEnvelopeEncryptor;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение outbox-таблицы employee_changes, которую заполняют триггеры на employees (см. db/init.sql)
+ */
+@Component
+public class EmployeeChangeStore {
+
+    private static final String COMPLETED = "xid < pg_snapshot_xmin(pg_current_snapshot())";
+    private static final String READ_AFTER = """
+            SELECT xid::text AS xid, id, operation, employee_id, firstname, lastname, email, version
+            FROM employee_changes
+            WHERE (xid, id) > (?::xid8, ?) AND %s
+            ORDER BY xid, id
+            LIMIT ?""".formatted(COMPLETED);
+    private static final String HEAD = """
+            SELECT xid::text AS xid, id FROM employee_changes WHERE %s ORDER BY xid DESC, id DESC LIMIT 1"""
+            .formatted(COMPLETED);
+    private static final String FIRST = "SELECT xid::text AS xid, id FROM employee_changes ORDER BY xid, id LIMIT 1";
+    /**
+     * Граничная строка остаётся в таблице: по первой строке определяется, не устарела ли позиция клиента
+     */
+    private static final String PURGE = """
+            DELETE FROM employee_changes
+            WHERE (xid, id) < (SELECT xid, id FROM employee_changes
+                               WHERE created_at < ? AND %s
+                               ORDER BY created_at DESC
+                               LIMIT 1)""".formatted(COMPLETED);
+
+    private static final RowMapper<ChangePosition> POSITION_MAPPER = (rs, rowNum) ->
+            new ChangePosition(Long.parseLong(rs.getString("xid")), rs.getLong("id"));
+    private static final RowMapper<EmployeeChange> CHANGE_MAPPER = (rs, rowNum) -> new EmployeeChange(
+            POSITION_MAPPER.mapRow(rs, rowNum),
+            rs.getString("operation"),
+            rs.getLong("employee_id"),
+            rs.getString("firstname"),
+            rs.getString("lastname"),
+            rs.getString("email"),
+            rs.getObject("version", Long.class));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<TransitEnvelopeEncryptor> encryptor;
+
+    public EmployeeChangeStore(JdbcTemplate jdbcTemplate, ObjectProvider<TransitEnvelopeEncryptor> encryptor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * Изменения завершённых транзакций после {@code position} в порядке коммита, email расшифрован
+     */
+    public List<EmployeeChange> readAfter(ChangePosition position, int limit) {
+        List<EmployeeChange> changes = jdbcTemplate.query(READ_AFTER, CHANGE_MAPPER,
+                Long.toString(position.xid()), position.id(), limit);
+        TransitEnvelopeEncryptor available = encryptor.getIfAvailable();
+        if (available == null || changes.isEmpty()) {
+            return changes;
+        }
+        List<String> emails = available.decryptAll(changes.stream().map(EmployeeChange::email).toList());
+        List<EmployeeChange> decrypted = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            EmployeeChange change = changes.get(i);
+            decrypted.add(new EmployeeChange(change.position(), change.operation(), change.employeeId(),
+                    change.firstName(), change.lastName(), emails.get(i), change.version()));
+        }
+        return decrypted;
+    }
+
+    /**
+     * @return позиция последнего завершённого изменения или {@link ChangePosition#ZERO}, если изменений нет
+     */
+    public ChangePosition head() {
+        return jdbcTemplate.query(HEAD, POSITION_MAPPER).stream().findFirst().orElse(ChangePosition.ZERO);
+    }
+
+    /**
+     * @return true, если изменения сразу после {@code position} уже удалены по сроку хранения
+     */
+    public boolean isExpired(ChangePosition position) {
+        return jdbcTemplate.query(FIRST, POSITION_MAPPER).stream().findFirst()
+                .map(first -> position.compareTo(first) < 0)
+                .orElse(false);
+    }
+
+    public int purgeBefore(Instant cutoff) {
+        return jdbcTemplate.update(PURGE, Timestamp.from(cutoff));
+    }
+}
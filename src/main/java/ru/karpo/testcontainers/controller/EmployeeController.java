@@ -1,37 +1,167 @@
 package ru.karpo.testcontainers.controller;
 
+import ru.karpo.testcontainers.changes.EmployeeChangeFeed;
+import ru.karpo.testcontainers.exceptions.BadRequestException;
+import ru.karpo.testcontainers.exceptions.PreconditionFailedException;
 import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
 import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
 import ru.karpo.testcontainers.repository.EmployeeRepository;
+import ru.karpo.testcontainers.service.EmployeeBatchService;
+import ru.karpo.testcontainers.service.EmployeeCopyService;
+import ru.karpo.testcontainers.service.EmployeeSearchService;
+import ru.karpo.testcontainers.service.EmployeeService;
+import ru.karpo.testcontainers.service.EmployeeStreamService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
 
 @RestController
 @RequestMapping("/api/v1")
 public class EmployeeController {
 
     private final EmployeeRepository employeeRepository;
-    private static final String ERROR_MESSAGE = "Employee not found for this id :: ";
+    private final EmployeeService employeeService;
+    private final EmployeeStreamService employeeStreamService;
+    private final EmployeeBatchService employeeBatchService;
+    private final EmployeeSearchService employeeSearchService;
+    private final EmployeeCopyService employeeCopyService;
+    private final EmployeeChangeFeed employeeChangeFeed;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final String TEXT_CSV_VALUE = "text/csv";
 
-    public EmployeeController(EmployeeRepository employeeRepository) {
+    public EmployeeController(EmployeeRepository employeeRepository, EmployeeService employeeService,
+                              EmployeeStreamService employeeStreamService, EmployeeBatchService employeeBatchService,
+                              EmployeeSearchService employeeSearchService, EmployeeCopyService employeeCopyService,
+                              EmployeeChangeFeed employeeChangeFeed) {
         this.employeeRepository = employeeRepository;
+        this.employeeService = employeeService;
+        this.employeeStreamService = employeeStreamService;
+        this.employeeBatchService = employeeBatchService;
+        this.employeeSearchService = employeeSearchService;
+        this.employeeCopyService = employeeCopyService;
+        this.employeeChangeFeed = employeeChangeFeed;
     }
 
+    /**
+     * С {@code fields} (например {@code ?fields=id,email}) читаются только эти столбцы, без загрузки сущностей
+     */
     @GetMapping("/employees")
-    public List<Employee> getAllEmployees() {
-        return employeeRepository.findAll();
+    public ResponseEntity<?> getAllEmployees(@RequestParam(value = "after", defaultValue = "0") long after,
+                                             @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                             @RequestParam(value = "fields", required = false) String fields)
+            throws BadRequestException {
+        int pageSize = pageSize(limit);
+        if (fields != null) {
+            return page(employeeRepository.findViewsByIdGreaterThan(after, parseFields(fields), pageSize),
+                    pageSize, EmployeeView::id);
+        }
+        List<Employee> employees = employeeRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(pageSize));
+        return page(employees, pageSize, Employee::getId);
     }
 
+    /**
+     * Поиск по точному email и/или префиксу имени и фамилии без учёта регистра. Хотя бы один фильтр обязателен
+     */
+    @GetMapping("/employees/search")
+    public ResponseEntity<?> searchEmployees(@RequestParam(value = "email", required = false) String email,
+                                             @RequestParam(value = "firstName", required = false) String firstName,
+                                             @RequestParam(value = "lastName", required = false) String lastName,
+                                             @RequestParam(value = "after", defaultValue = "0") long after,
+                                             @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                             @RequestParam(value = "fields", required = false) String fields)
+            throws BadRequestException {
+        email = blankToNull(email);
+        firstName = blankToNull(firstName);
+        lastName = blankToNull(lastName);
+        if (email == null && firstName == null && lastName == null) {
+            throw new BadRequestException("At least one of email, firstName, lastName is required");
+        }
+        int pageSize = pageSize(limit);
+        if (fields != null) {
+            return page(employeeSearchService.search(email, firstName, lastName, after, pageSize, parseFields(fields)),
+                    pageSize, EmployeeView::id);
+        }
+        return page(employeeSearchService.search(email, firstName, lastName, after, pageSize), pageSize,
+                Employee::getId);
+    }
+
+    /**
+     * Полная страница получает ссылку rel="next" на следующую с after = последнему id.
+     * Формат тела зависит от Accept (JSON, CBOR, Smile, protobuf), поэтому ответ помечен Vary: Accept
+     */
+    private static <T> ResponseEntity<List<T>> page(List<T> employees, int pageSize, ToLongFunction<T> id) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+        if (employees.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", id.applyAsLong(employees.get(pageSize - 1)))
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(employees);
+    }
+
+    @GetMapping(value = "/employees/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamEmployeesAsNdjson(@RequestParam(value = "after", defaultValue = "0") long after,
+                                        HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        employeeStreamService.writeNdjson(after, response.getOutputStream());
+    }
+
+    @GetMapping(value = "/employees/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void streamEmployeesAsJsonArray(@RequestParam(value = "after", defaultValue = "0") long after,
+                                           HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        employeeStreamService.writeJsonArray(after, response.getOutputStream());
+    }
+
+    /**
+     * Лента изменений: SSE-события created, updated, deleted и reset (позиция устарела, список нужно перечитать).
+     * EventSource при переподключении сам присылает Last-Event-ID; параметр lastEventId - для клиентов без заголовков
+     */
+    @GetMapping(value = "/employees/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEmployeeChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam)
+            throws BadRequestException {
+        try {
+            return employeeChangeFeed.subscribe(lastEventId != null ? lastEventId : lastEventIdParam);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    /**
+     * Ответ несёт ETag с версией строки. Запрос с совпадающим If-None-Match получает 304 без тела:
+     * это проверяет сам Spring MVC при обработке ResponseEntity с ETag. Для CBOR, Smile и protobuf
+     * к ETag добавляется формат тела, см. FormatETagAdvice
+     */
     @GetMapping("/employees/{id}")
-    public ResponseEntity<Employee> getEmployeeById(@PathVariable(value = "id") Long employeeId)
-            throws ResourceNotFoundException {
-        Employee employee = employeeRepository.findById(employeeId)
-                .orElseThrow(() -> new ResourceNotFoundException(ERROR_MESSAGE+ employeeId));
-        return ResponseEntity.ok().body(employee);
+    public ResponseEntity<?> getEmployeeById(@PathVariable(value = "id") Long employeeId,
+                                             @RequestParam(value = "fields", required = false) String fields)
+            throws ResourceNotFoundException, BadRequestException {
+        if (fields != null) {
+            EmployeeView view = employeeService.getViewById(employeeId, parseFields(fields));
+            return ResponseEntity.ok().eTag(eTag(view.version())).varyBy(HttpHeaders.ACCEPT).body(view);
+        }
+        Employee employee = employeeService.getById(employeeId);
+        return ResponseEntity.ok().eTag(eTag(employee.getVersion())).varyBy(HttpHeaders.ACCEPT).body(employee);
     }
 
     @PostMapping("/employees")
@@ -41,27 +171,127 @@ public class EmployeeController {
 
     @PutMapping("/employees/{id}")
     public ResponseEntity<Employee> updateEmployee(@PathVariable(value = "id") Long employeeId,
-                                                   @RequestBody Employee employeeDetails) throws ResourceNotFoundException {
-        Employee employee = employeeRepository.findById(employeeId)
-                .orElseThrow(() -> new ResourceNotFoundException(ERROR_MESSAGE + employeeId));
+                                                   @RequestBody Employee employeeDetails,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws ResourceNotFoundException, PreconditionFailedException {
+        Long expectedVersion = parseIfMatch(ifMatch);
+        final Employee updatedEmployee = employeeService.update(employeeId, employeeDetails, expectedVersion);
 
-        employee.setEmail(employeeDetails.getEmail());
-        employee.setLastName(employeeDetails.getLastName());
-        employee.setFirstName(employeeDetails.getFirstName());
-        final Employee updatedEmployee = employeeRepository.save(employee);
-        return ResponseEntity.ok(updatedEmployee);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (expectedVersion != null) {
+            response.eTag(eTag(updatedEmployee.getVersion()));
+        }
+        return response.body(updatedEmployee);
     }
 
     @DeleteMapping("/employees/{id}")
-    public Map<String, Boolean> deleteEmployee(@PathVariable(value = "id") Long employeeId)
-            throws ResourceNotFoundException {
-        Employee employee = employeeRepository.findById(employeeId)
-                .orElseThrow(() -> new ResourceNotFoundException(ERROR_MESSAGE + employeeId));
-
-        employeeRepository.delete(employee);
+    public Map<String, Boolean> deleteEmployee(@PathVariable(value = "id") Long employeeId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws ResourceNotFoundException, PreconditionFailedException {
+        employeeService.delete(employeeId, parseIfMatch(ifMatch));
         Map<String, Boolean> response = new HashMap<>();
         response.put("deleted", Boolean.TRUE);
         return response;
     }
 
-}
\ No newline at end of file
+    @PostMapping("/employees:batch")
+    public List<Employee> createEmployees(@RequestBody List<Employee> employees) throws BadRequestException {
+        checkBatchSize(employees.size());
+        return employeeBatchService.createAll(employees);
+    }
+
+    @PutMapping("/employees:batch")
+    public List<Employee> updateEmployees(@RequestBody List<Employee> employeeDetails)
+            throws BadRequestException, ResourceNotFoundException {
+        checkBatchSize(employeeDetails.size());
+        return employeeBatchService.updateAll(employeeDetails);
+    }
+
+    @DeleteMapping("/employees:batch")
+    public Map<String, Integer> deleteEmployees(@RequestBody List<Long> employeeIds) throws BadRequestException {
+        checkBatchSize(employeeIds.size());
+        Map<String, Integer> response = new HashMap<>();
+        response.put("deleted", employeeBatchService.deleteAll(employeeIds));
+        return response;
+    }
+
+    /**
+     * Загрузка через COPY без ограничения размера. Отклонённые строки перечислены в ответе, остальные сохраняются
+     */
+    @PostMapping(value = "/employees:import", consumes = TEXT_CSV_VALUE)
+    public EmployeeCopyService.ImportResult importEmployeesFromCsv(InputStream body)
+            throws IOException, BadRequestException {
+        return employeeCopyService.importCsv(body);
+    }
+
+    @PostMapping(value = "/employees:import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public EmployeeCopyService.ImportResult importEmployeesFromNdjson(InputStream body) {
+        return employeeCopyService.importNdjson(body);
+    }
+
+    @GetMapping(value = "/employees:export", produces = TEXT_CSV_VALUE)
+    public void exportEmployeesAsCsv(@RequestParam(value = "after", defaultValue = "0") long after,
+                                     HttpServletResponse response) throws IOException {
+        response.setContentType(TEXT_CSV_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        employeeCopyService.exportCsv(after, response.getOutputStream());
+    }
+
+    @GetMapping(value = "/employees:export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void exportEmployeesAsNdjson(@RequestParam(value = "after", defaultValue = "0") long after,
+                                        HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        employeeCopyService.exportNdjson(after, response.getOutputStream());
+    }
+
+    private static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @return ожидаемая версия из If-Match или null, если заголовка нет либо он равен "*"
+     */
+    private static Long parseIfMatch(String ifMatch) throws PreconditionFailedException {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        // If-Match сравнивается строго (RFC 9110), слабый W/"..." не совпадает ни с какой версией.
+        // ETag любого формата тела ("3" или "3.cbor") указывает на одну и ту же версию строки
+        String tag = ifMatch.trim();
+        if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        int format = tag.indexOf('.');
+        if (format >= 0) {
+            tag = tag.substring(0, format);
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match does not match any version: " + ifMatch);
+        }
+    }
+
+    private static Set<EmployeeField> parseFields(String fields) throws BadRequestException {
+        try {
+            return EmployeeField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static void checkBatchSize(int size) throws BadRequestException {
+        if (size > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Batch size " + size + " exceeds the limit of " + MAX_BATCH_SIZE);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package ru.karpo.testcontainers.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.karpo.testcontainers.exceptions.BadRequestException;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+import ru.karpo.testcontainers.exceptions.ServiceUnavailableException;
+import ru.karpo.testcontainers.ingest.EmployeeIngestQueue;
+import ru.karpo.testcontainers.ingest.IngestStatus;
+import ru.karpo.testcontainers.model.Employee;
+
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Создание сотрудников с отложенной записью (см. EmployeeIngestQueue). Включается employees.ingest.enabled=true
+ */
+@RestController
+@RequestMapping("/api/v1")
+@ConditionalOnProperty(prefix = "employees.ingest", name = "enabled", havingValue = "true")
+public class EmployeeIngestController {
+
+    private final EmployeeIngestQueue ingestQueue;
+
+    public EmployeeIngestController(EmployeeIngestQueue ingestQueue) {
+        this.ingestQueue = ingestQueue;
+    }
+
+    /**
+     * 202 сразу после постановки в очередь. Location ведёт на статус записи, id сотрудника появится в нём
+     * после сохранения. Пустые поля отклоняются здесь же, а не после записи в базу
+     */
+    @PostMapping("/employees:ingest")
+    public ResponseEntity<IngestStatus> ingestEmployee(@RequestBody Employee employee)
+            throws BadRequestException, ServiceUnavailableException {
+        if (isBlank(employee.getFirstName()) || isBlank(employee.getLastName()) || isBlank(employee.getEmail())) {
+            throw new BadRequestException("firstName, lastName and email are required");
+        }
+        IngestStatus status = ingestQueue.submit(employee);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{trackingId}")
+                .buildAndExpand(status.trackingId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+
+    @GetMapping("/employees:ingest/{trackingId}")
+    public IngestStatus getIngestStatus(@PathVariable(value = "trackingId") UUID trackingId)
+            throws ResourceNotFoundException {
+        IngestStatus status = ingestQueue.status(trackingId);
+        if (status == null) {
+            throw new ResourceNotFoundException("Ingest status not found for this tracking id :: " + trackingId);
+        }
+        return status;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
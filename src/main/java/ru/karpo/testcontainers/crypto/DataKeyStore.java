@@ -0,0 +1,67 @@
+package ru.karpo.testcontainers.crypto;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище обёрнутых (зашифрованных Transit) ключей данных в таблице employee_data_keys.
+ * <p>
+ * Новые ключи записываются через отдельное соединение вне пула (keyDataSource) в режиме autocommit.
+ * Запись происходит при flush Hibernate, пока поток держит соединение пула; транзакция REQUIRES_NEW
+ * ждала бы второе соединение из того же пула, и занятый пул повисал бы до connectionTimeout.
+ * Чтение идёт через jdbcTemplate и использует соединение текущей транзакции
+ */
+public class DataKeyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate keyWriter;
+
+    public DataKeyStore(JdbcTemplate jdbcTemplate, DataSource keyDataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.keyWriter = new JdbcTemplate(keyDataSource);
+    }
+
+    /**
+     * Ключ фиксируется сразу, независимо от текущей транзакции: если она откатится, а ключ останется в кэше
+     * шифратора, более поздние строки окажутся зашифрованы ключом, которого нет в БД
+     */
+    public void save(String keyId, String wrappedKey) {
+        keyWriter.update("INSERT INTO employee_data_keys (key_id, wrapped_key) VALUES (?, ?)", keyId, wrappedKey);
+    }
+
+    /**
+     * Для ключей с фиксированным id, которые может одновременно создать несколько экземпляров приложения:
+     * остаётся первый записанный
+     */
+    public void saveIfAbsent(String keyId, String wrappedKey) {
+        keyWriter.update(
+                "INSERT INTO employee_data_keys (key_id, wrapped_key) VALUES (?, ?) ON CONFLICT (key_id) DO NOTHING",
+                keyId, wrappedKey);
+    }
+
+    /**
+     * Запрошенные ключи вместе с {@code recent} последними, чтобы развернуть их одним batch-запросом к Transit
+     *
+     * @return key_id -> wrapped_key
+     */
+    public Map<String, String> findWithRecent(Collection<String> keyIds, int recent) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        String placeholders = String.join(", ", Collections.nCopies(keyIds.size(), "?"));
+        List<Object> args = new ArrayList<>(keyIds);
+        args.add(recent);
+        jdbcTemplate.query("SELECT key_id, wrapped_key FROM employee_data_keys WHERE key_id IN (" + placeholders + ") "
+                        + "UNION SELECT * FROM (SELECT key_id, wrapped_key FROM employee_data_keys "
+                        + "ORDER BY created_at DESC LIMIT ?) recent",
+                rs -> {
+                    keys.put(rs.getString(1), rs.getString(2));
+                }, args.toArray());
+        return keys;
+    }
+}
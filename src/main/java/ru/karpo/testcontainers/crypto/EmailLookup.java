@@ -0,0 +1,38 @@
+package ru.karpo.testcontainers.crypto;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Значение столбца email_lookup для поиска по точному email без учёта регистра.
+ * <p>
+ * Без шифрования это нормализованный адрес, с шифрованием - blind index от него ({@link TransitEnvelopeEncryptor#blindIndex}).
+ * Строки, записанные до включения шифрования, нужно переиндексировать, иначе по email они не найдутся
+ */
+@Component
+public class EmailLookup {
+
+    private final ObjectProvider<TransitEnvelopeEncryptor> encryptor;
+
+    public EmailLookup(ObjectProvider<TransitEnvelopeEncryptor> encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    public String of(String email) {
+        if (email == null) {
+            return null;
+        }
+        String normalized = normalize(email);
+        TransitEnvelopeEncryptor available = encryptor.getIfAvailable();
+        return available == null ? normalized : available.blindIndex(normalized);
+    }
+
+    /**
+     * Адреса, отличающиеся регистром или пробелами по краям, считаются одинаковыми
+     */
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.karpo.testcontainers.crypto;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import org.springframework.stereotype.Component;
+import ru.karpo.testcontainers.model.Employee;
+
+/**
+ * Заполняет email_lookup при вставке и изменении сущности. Hibernate получает слушатель из контекста Spring.
+ * Запросы UPDATE из EmployeeRepository сущность не загружают и передают email_lookup сами
+ */
+@Component
+public class EmailLookupListener {
+
+    private final EmailLookup emailLookup;
+
+    public EmailLookupListener(EmailLookup emailLookup) {
+        this.emailLookup = emailLookup;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void updateEmailLookup(Employee employee) {
+        employee.setEmailLookup(emailLookup.of(employee.getEmail()));
+    }
+}
@@ -0,0 +1,33 @@
+package ru.karpo.testcontainers.crypto;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Шифрует строковый столбец через {@link TransitEnvelopeEncryptor}. Hibernate получает конвертер из контекста Spring.
+ * Если шифрование выключено (vault.transit.enabled=false), значения проходят без изменений
+ */
+@Component
+@Converter
+public class EncryptedStringConverter implements AttributeConverter<String, String> {
+
+    private final ObjectProvider<TransitEnvelopeEncryptor> encryptor;
+
+    public EncryptedStringConverter(ObjectProvider<TransitEnvelopeEncryptor> encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        TransitEnvelopeEncryptor available = encryptor.getIfAvailable();
+        return available == null ? attribute : available.encrypt(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        TransitEnvelopeEncryptor available = encryptor.getIfAvailable();
+        return available == null ? dbData : available.decrypt(dbData);
+    }
+}
@@ -0,0 +1,277 @@
+package ru.karpo.testcontainers.crypto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.karpo.testcontainers.vault.VaultClient;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Envelope encryption строковых полей через Vault Transit.
+ * <p>
+ * Transit только выдаёт и разворачивает ключи данных (AES-256), а сами значения шифруются в процессе AES-GCM.
+ * Поэтому на запись и чтение строки обращения к Vault нет:
+ * <ul>
+ *     <li>текущий ключ шифрования живёт не дольше dataKeyTtl и не больше {@value #MAX_ENCRYPTIONS_PER_KEY} операций;</li>
+ *     <li>развёрнутые ключи для расшифровки лежат в ограниченном локальном кэше;</li>
+ *     <li>промах кэша разворачивает сразу все неизвестные недавние ключи одним batch-запросом к Transit.</li>
+ * </ul>
+ * Формат хранимого значения: {@code enc:v1:<key_id>:<base64(iv || ciphertext || tag)>}.
+ * Значения без префикса считаются открытым текстом, записанным до включения шифрования.
+ * <p>
+ * Для поиска по точному совпадению шифротекст не подходит (IV случайный), поэтому рядом хранится
+ * blind index - HMAC-SHA256 значения на отдельном ключе {@value #BLIND_INDEX_KEY_ID}, общем для всех экземпляров
+ */
+public class TransitEnvelopeEncryptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransitEnvelopeEncryptor.class);
+
+    static final String PREFIX = "enc:v1:";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final long MAX_ENCRYPTIONS_PER_KEY = 1L << 24;
+    private static final int RECENT_KEYS_TO_UNWRAP = 32;
+    private static final String BLIND_INDEX_KEY_ID = "blind-index-v1";
+    private static final String HMAC = "HmacSHA256";
+
+    private final VaultClient vaultClient;
+    private final DataKeyStore dataKeyStore;
+    private final String backend;
+    private final String keyName;
+    private final Duration dataKeyTtl;
+    private final Clock clock;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ReentrantLock rotationLock = new ReentrantLock();
+    private final Cache<String, SecretKey> decryptionKeys;
+    private volatile DataKey current;
+    private volatile SecretKey blindIndexKey;
+
+    public TransitEnvelopeEncryptor(VaultClient vaultClient, DataKeyStore dataKeyStore, String backend, String keyName,
+                                    Duration dataKeyTtl, long keyCacheSize, Clock clock) {
+        this.vaultClient = vaultClient;
+        this.dataKeyStore = dataKeyStore;
+        this.backend = backend;
+        this.keyName = keyName;
+        this.dataKeyTtl = dataKeyTtl;
+        this.clock = clock;
+        this.decryptionKeys = Caffeine.newBuilder()
+                .maximumSize(keyCacheSize)
+                .expireAfterAccess(dataKeyTtl.multipliedBy(24))
+                .recordStats()
+                .build();
+    }
+
+    public String encrypt(String plaintext) {
+        if (plaintext == null) {
+            return null;
+        }
+        DataKey dataKey = currentDataKey();
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey.key(), new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(dataKey.id().getBytes(StandardCharsets.US_ASCII));
+            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            byte[] payload = ByteBuffer.allocate(iv.length + ciphertext.length).put(iv).put(ciphertext).array();
+            return PREFIX + dataKey.id() + ":" + Base64.getEncoder().encodeToString(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt value", e);
+        }
+    }
+
+    public String decrypt(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return stored;
+        }
+        String keyId = keyId(stored);
+        byte[] payload = Base64.getDecoder().decode(stored.substring(PREFIX.length() + keyId.length() + 1));
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, decryptionKey(keyId), new GCMParameterSpec(TAG_BITS, payload, 0, IV_LENGTH));
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.US_ASCII));
+            byte[] plaintext = cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH);
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to decrypt value with data key " + keyId, e);
+        }
+    }
+
+    /**
+     * Для значений, прочитанных в обход Hibernate (лента изменений): все неизвестные ключи списка
+     * разворачиваются заранее одним запросом к Transit. Сущности расшифровывает EncryptedStringConverter
+     * построчно, но и там первый промах разворачивает недавние ключи одним запросом.
+     * Парного encryptAll нет: шифрование обращается к Transit только при смене ключа, а не на строку
+     */
+    public List<String> decryptAll(List<String> stored) {
+        Set<String> missing = new HashSet<>();
+        for (String value : stored) {
+            if (value != null && value.startsWith(PREFIX)) {
+                String keyId = keyId(value);
+                if (decryptionKeys.getIfPresent(keyId) == null) {
+                    missing.add(keyId);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            unwrapWithRecent(missing);
+        }
+
+        List<String> result = new ArrayList<>(stored.size());
+        stored.forEach(value -> result.add(decrypt(value)));
+        return result;
+    }
+
+    /**
+     * @return hex HMAC-SHA256 значения; одинаковые значения дают одинаковый индекс, по нему нельзя восстановить значение
+     */
+    public String blindIndex(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(blindIndexKey());
+            return HexFormat.of().formatHex(mac.doFinal(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute blind index", e);
+        }
+    }
+
+    /**
+     * Ключ создаётся один раз на всю БД. Если его одновременно создали несколько экземпляров,
+     * в таблице остаётся первый, и все разворачивают именно его
+     */
+    private SecretKey blindIndexKey() {
+        SecretKey key = blindIndexKey;
+        if (key != null) {
+            return key;
+        }
+        rotationLock.lock();
+        try {
+            if (blindIndexKey == null) {
+                if (!dataKeyStore.findWithRecent(Set.of(BLIND_INDEX_KEY_ID), 0).containsKey(BLIND_INDEX_KEY_ID)) {
+                    JsonNode data = vaultClient.write(backend + "/datakey/wrapped/" + keyName, Map.of("bits", 256))
+                            .path("data");
+                    dataKeyStore.saveIfAbsent(BLIND_INDEX_KEY_ID, data.path("ciphertext").asText());
+                }
+                blindIndexKey = new SecretKeySpec(decryptionKey(BLIND_INDEX_KEY_ID).getEncoded(), HMAC);
+            }
+            return blindIndexKey;
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    private SecretKey decryptionKey(String keyId) {
+        SecretKey key = decryptionKeys.getIfPresent(keyId);
+        if (key != null) {
+            return key;
+        }
+        unwrapWithRecent(Set.of(keyId));
+        key = decryptionKeys.getIfPresent(keyId);
+        if (key == null) {
+            throw new IllegalStateException("Unknown data key " + keyId);
+        }
+        return key;
+    }
+
+    /**
+     * Один SELECT и один batch-запрос к Transit на все ещё не развёрнутые недавние ключи,
+     * чтобы чтение списка, зашифрованного разными ключами, не делало запрос к Vault на каждый ключ
+     */
+    private void unwrapWithRecent(Set<String> keyIds) {
+        List<Map.Entry<String, String>> wrapped = dataKeyStore.findWithRecent(keyIds, RECENT_KEYS_TO_UNWRAP)
+                .entrySet().stream()
+                .filter(entry -> decryptionKeys.getIfPresent(entry.getKey()) == null)
+                .toList();
+        if (wrapped.isEmpty()) {
+            return;
+        }
+
+        List<Map<String, String>> batchInput = wrapped.stream()
+                .map(entry -> Map.of("ciphertext", entry.getValue()))
+                .toList();
+        JsonNode results = vaultClient.write(backend + "/decrypt/" + keyName, Map.of("batch_input", batchInput))
+                .path("data").path("batch_results");
+        for (int i = 0; i < wrapped.size(); i++) {
+            JsonNode result = results.path(i);
+            if (!result.path("error").asText().isEmpty()) {
+                logger.warn("Transit failed to unwrap data key {}: {}", wrapped.get(i).getKey(), result.path("error").asText());
+                continue;
+            }
+            decryptionKeys.put(wrapped.get(i).getKey(), aesKey(result.path("plaintext").asText()));
+        }
+        logger.debug("Unwrapped {} data keys in one Transit call", wrapped.size());
+    }
+
+    private DataKey currentDataKey() {
+        DataKey dataKey = current;
+        Instant now = clock.instant();
+        if (dataKey != null && now.isBefore(dataKey.expiresAt()) && dataKey.uses().incrementAndGet() <= MAX_ENCRYPTIONS_PER_KEY) {
+            return dataKey;
+        }
+        rotationLock.lock();
+        try {
+            dataKey = current;
+            if (dataKey != null && now.isBefore(dataKey.expiresAt()) && dataKey.uses().get() < MAX_ENCRYPTIONS_PER_KEY) {
+                dataKey.uses().incrementAndGet();
+                return dataKey;
+            }
+            current = newDataKey(now);
+            current.uses().incrementAndGet();
+            return current;
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    private DataKey newDataKey(Instant now) {
+        JsonNode data = vaultClient.write(backend + "/datakey/plaintext/" + keyName, Map.of("bits", 256)).path("data");
+        byte[] id = new byte[8];
+        random.nextBytes(id);
+        String keyId = HexFormat.of().formatHex(id);
+
+        SecretKey key = aesKey(data.path("plaintext").asText());
+        dataKeyStore.save(keyId, data.path("ciphertext").asText());
+        decryptionKeys.put(keyId, key);
+        logger.info("Generated data key {}", keyId);
+        return new DataKey(keyId, key, now.plus(dataKeyTtl), new AtomicLong());
+    }
+
+    private static String keyId(String stored) {
+        return stored.substring(PREFIX.length(), stored.indexOf(':', PREFIX.length()));
+    }
+
+    private static SecretKey aesKey(String base64) {
+        return new SecretKeySpec(Base64.getDecoder().decode(base64), "AES");
+    }
+
+    private record DataKey(String id, SecretKey key, Instant expiresAt, AtomicLong uses) {
+    }
+}
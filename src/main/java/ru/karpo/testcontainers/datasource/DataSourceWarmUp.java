@@ -0,0 +1,77 @@
+package ru.karpo.testcontainers.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Прогрев пула соединений при старте.
+ * <p>
+ * ApplicationRunner выполняется до того, как приложение переходит в состояние ACCEPTING_TRAFFIC,
+ * поэтому readiness-проба не пропустит трафик, пока пул не заполнен. Соединения берутся одновременно,
+ * чтобы Hikari открыл их физически (TLS-рукопожатие и аутентификация по клиентскому сертификату),
+ * каждое проверяется, после чего один раз выполняется запрос через JPA для прогрева Hibernate.
+ * Соединения, которые к этому моменту уже заняты (LISTEN ленты изменений), засчитываются: иначе прогрев
+ * ждал бы соединение сверх размера пула
+ */
+@Component
+@ConditionalOnProperty(prefix = "datasource.warm-up", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceWarmUp implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceWarmUp.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final DataSource dataSource;
+    private final EmployeeRepository employeeRepository;
+
+    public DataSourceWarmUp(DataSource dataSource, EmployeeRepository employeeRepository) {
+        this.dataSource = dataSource;
+        this.employeeRepository = employeeRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws SQLException {
+        long start = System.nanoTime();
+        HikariDataSource hikari = dataSource.isWrapperFor(HikariDataSource.class)
+                ? dataSource.unwrap(HikariDataSource.class)
+                : null;
+        int size = hikari == null ? 1 : Math.max(1, Math.min(hikari.getMinimumIdle(), hikari.getMaximumPoolSize()));
+        List<Connection> connections = new ArrayList<>(size);
+        try {
+            while (connections.size() < size && activeConnections(hikari) < size) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    throw new SQLException("Connection failed validation during warm-up");
+                }
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+        employeeRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(1));
+        logger.info("Warmed up {} database connections in {} ms", size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Пул Hikari создаётся при первом запросе соединения, до этого занятых соединений нет
+     */
+    private static int activeConnections(HikariDataSource hikari) {
+        HikariPoolMXBean pool = hikari == null ? null : hikari.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+}
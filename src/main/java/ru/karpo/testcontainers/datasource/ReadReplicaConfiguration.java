@@ -0,0 +1,87 @@
+package ru.karpo.testcontainers.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+import ru.karpo.testcontainers.vault.VaultCredentialsDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение с реплик: транзакции с readOnly = true получают соединение реплики, остальные - основного пула.
+ * <p>
+ * LazyConnectionDataSourceProxy берёт физическое соединение только при первом запросе, когда
+ * JpaTransactionManager уже пометил соединение транзакции как read-only, и по этому флагу выбирает пул.
+ * Без транзакции (JdbcTemplate, LISTEN ленты изменений) соединение всегда идёт к primary
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty(prefix = "datasource.replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    /**
+     * Тот же пул, что Spring Boot создал бы сам. Он отдельный бин, чтобы его видели метрики hikaricp.*
+     * и подключение к кредам Vault
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReplicaDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource(HikariDataSource primaryDataSource, ReplicaProperties properties,
+                                               MeterRegistry registry) {
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            pools.add(replicaPool(primaryDataSource, properties, properties.getUrls().get(i), "replica-" + (i + 1),
+                    registry));
+        }
+        return new ReplicaDataSource(primaryDataSource, pools, properties.getMaxLag(), properties.getCheckInterval(),
+                registry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    /**
+     * Пул создаётся без подключения (как и основной, Hikari открывает его при первом getConnection),
+     * поэтому недоступная при старте реплика не мешает приложению подняться
+     */
+    private static HikariDataSource replicaPool(HikariDataSource primary, ReplicaProperties properties, String jdbcUrl,
+                                                String name, MeterRegistry registry) {
+        HikariDataSource pool = new HikariDataSource();
+        primary.copyStateTo(pool);
+        pool.setPoolName(name);
+        pool.setJdbcUrl(jdbcUrl);
+        pool.setReadOnly(true);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        if (StringUtils.hasText(properties.getUsername())) {
+            pool.setDataSource(null);
+            pool.setUsername(properties.getUsername());
+            pool.setPassword(properties.getPassword());
+        } else if (primary.getDataSource() instanceof VaultCredentialsDataSource vault) {
+            pool.setDataSource(vault.withJdbcUrl(jdbcUrl));
+            vault.getCredentialProvider().register(pool);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.karpo.testcontainers.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSource для read-only транзакций: соединения раздаются по репликам по кругу.
+ * <p>
+ * Фоновая проверка измеряет отставание каждой реплики. Реплика, отставшая больше maxLag, недоступная
+ * или переставшая быть standby, не получает запросов до следующей успешной проверки. Если подходящих реплик нет,
+ * соединение выдаёт основной пул: чтение не падает, а временно нагружает primary
+ */
+public class ReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaDataSource.class);
+    private static final int CHECK_TIMEOUT_SECONDS = 5;
+    /**
+     * Пока реплика успевает проигрывать всё полученное, отставание нулевое. Иначе считается от последней
+     * проигранной транзакции. Строка в pg_stat_wal_receiver есть, только пока реплика получает WAL от primary
+     */
+    private static final String LAG_QUERY = """
+            SELECT pg_is_in_recovery() AS standby,
+                   EXISTS (SELECT 1 FROM pg_stat_wal_receiver) AS receiving,
+                   CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())
+                   END AS lag_seconds""";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final Counter primaryReads;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replica-lag-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaDataSource(DataSource primary, List<HikariDataSource> pools, Duration maxLag, Duration checkInterval,
+                             MeterRegistry registry) {
+        this.primary = primary;
+        this.replicas = pools.stream().map(pool -> new Replica(pool, registry)).toList();
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.primaryReads = readCounter(registry, PRIMARY);
+    }
+
+    /**
+     * Первая проверка выполняется сразу, до неё чтение идёт с primary
+     */
+    public void start() {
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.available) {
+                continue;
+            }
+            try {
+                Connection connection = replica.pool.getConnection();
+                replica.reads.increment();
+                return connection;
+            } catch (SQLException e) {
+                //до следующей успешной проверки реплика не получает запросов
+                replica.available = false;
+                logger.warn("Replica {} is unavailable, trying the next one", replica.pool.getPoolName(), e);
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Реплики - пулы Hikari, а пул отдаёт соединения только со своими кредами
+     * (HikariDataSource сам бросает SQLFeatureNotSupportedException). Открыть соединение в обход пула
+     * тоже нельзя: тогда чтение не учитывало бы отставание реплик
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the credentials of their pools");
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean available = false;
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+                try (ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                    rs.next();
+                    double lag = rs.getObject("lag_seconds") == null ? Double.NaN : rs.getDouble("lag_seconds");
+                    replica.lagSeconds = lag;
+                    available = rs.getBoolean("standby") && rs.getBoolean("receiving")
+                            && lag <= maxLag.toMillis() / 1000.0;
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.lagSeconds = Double.NaN;
+                logger.debug("Replica {} check failed", replica.pool.getPoolName(), e);
+            }
+            if (replica.available != available) {
+                logger.info("Replica {} is {} (lag {} s)", replica.pool.getPoolName(),
+                        available ? "back in rotation" : "out of rotation", replica.lagSeconds);
+            }
+            replica.available = available;
+        }
+    }
+
+    private static Counter readCounter(MeterRegistry registry, String target) {
+        return Counter.builder("datasource.read.connections")
+                .description("Connections handed out to read-only transactions")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    private static class Replica {
+
+        private final HikariDataSource pool;
+        private final Counter reads;
+        private volatile boolean available;
+        /**
+         * NaN, если отставание неизвестно
+         */
+        private volatile double lagSeconds = Double.NaN;
+
+        Replica(HikariDataSource pool, MeterRegistry registry) {
+            this.pool = pool;
+            this.reads = readCounter(registry, pool.getPoolName());
+            Gauge.builder("datasource.replica.lag", this, replica -> replica.lagSeconds)
+                    .baseUnit("seconds")
+                    .tag("replica", pool.getPoolName())
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.karpo.testcontainers.datasource;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGProperty;
+import org.postgresql.ssl.LibPQFactory;
+import org.postgresql.util.ObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSL-фабрика для драйвера Postgres (параметр URL {@code sslfactory}), которая переиспользует SSLContext между соединениями.
+ * <p>
+ * Драйвер создаёт фабрику заново на каждое физическое соединение, а LibPQFactory при этом каждый раз читает
+ * сертификаты и ключ с диска и собирает новый SSLContext с пустым кэшем сессий. Здесь настоящая фабрика
+ * (по умолчанию LibPQFactory, другую можно задать параметром {@value #DELEGATE_PROPERTY}) создаётся один раз
+ * на набор TLS-параметров, поэтому клиентский кэш TLS-сессий общий для всего пула.
+ * <p>
+ * Длительность каждого рукопожатия пишется в таймер {@value #HANDSHAKE_TIMER} с тегом resumed
+ */
+public class SessionCachingSSLSocketFactory extends SSLSocketFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionCachingSSLSocketFactory.class);
+
+    public static final String DELEGATE_PROPERTY = "sslfactorydelegate";
+    public static final String HANDSHAKE_TIMER = "db.tls.handshake";
+    private static final int SESSION_CACHE_SIZE = 256;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private static final ConcurrentMap<String, SSLSocketFactory> delegates = new ConcurrentHashMap<>();
+
+    private final SSLSocketFactory delegate;
+
+    public SessionCachingSSLSocketFactory(Properties info) {
+        String key = cacheKey(info);
+        SSLSocketFactory cached = delegates.get(key);
+        if (cached == null) {
+            //не computeIfAbsent: чтение ключей с диска под монитором ConcurrentHashMap закрепило бы виртуальный поток
+            SSLSocketFactory created = createDelegate(info);
+            cached = delegates.putIfAbsent(key, created);
+            if (cached == null) {
+                cached = created;
+            }
+        }
+        this.delegate = cached;
+    }
+
+    /**
+     * Строковый аргумент (устаревший sslfactoryarg) не передаётся: делегаты драйвера берут настройки из info
+     */
+    private static SSLSocketFactory createDelegate(Properties info) {
+        String className = info.getProperty(DELEGATE_PROPERTY, LibPQFactory.class.getName());
+        try {
+            return ObjectFactory.instantiate(SSLSocketFactory.class, className, info, true, null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate SSL socket factory " + className, e);
+        }
+    }
+
+    private static String cacheKey(Properties info) {
+        return String.join("|",
+                info.getProperty(DELEGATE_PROPERTY, LibPQFactory.class.getName()),
+                String.valueOf(PGProperty.SSL_MODE.getOrDefault(info)),
+                String.valueOf(PGProperty.SSL_CERT.getOrDefault(info)),
+                String.valueOf(PGProperty.SSL_KEY.getOrDefault(info)),
+                String.valueOf(PGProperty.SSL_ROOT_CERT.getOrDefault(info)),
+                String.valueOf(String.valueOf(PGProperty.SSL_PASSWORD.getOrDefault(info)).hashCode()));
+    }
+
+    /**
+     * Единственный метод, который вызывает драйвер: TLS поднимается поверх уже открытого TCP-сокета
+     */
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return timed(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return timed(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return timed(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return timed(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return timed(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    private static Socket timed(Socket socket) {
+        if (socket instanceof SSLSocket sslSocket) {
+            long startNanos = System.nanoTime();
+            long startMillis = System.currentTimeMillis();
+            sslSocket.addHandshakeCompletedListener(event -> {
+                long elapsed = System.nanoTime() - startNanos;
+                SSLSession session = event.getSession();
+                boolean resumed = session.getCreationTime() < startMillis;
+                configure(session.getSessionContext());
+                Timer.builder(HANDSHAKE_TIMER)
+                        .description("TLS handshake with the database server")
+                        .tag("resumed", String.valueOf(resumed))
+                        .register(Metrics.globalRegistry)
+                        .record(elapsed, TimeUnit.NANOSECONDS);
+                logger.debug("TLS handshake with {} took {} us, protocol {}, resumed {}",
+                        event.getSocket().getInetAddress(), elapsed / 1000, session.getProtocol(), resumed);
+            });
+        }
+        return socket;
+    }
+
+    private static void configure(SSLSessionContext context) {
+        if (context != null && context.getSessionCacheSize() != SESSION_CACHE_SIZE) {
+            context.setSessionCacheSize(SESSION_CACHE_SIZE);
+            context.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
+    }
+}
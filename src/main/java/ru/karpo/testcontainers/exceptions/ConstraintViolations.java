@@ -0,0 +1,41 @@
+package ru.karpo.testcontainers.exceptions;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.postgresql.util.PSQLException;
+
+/**
+ * Причина нарушения ограничения БД, которую можно отдать клиенту.
+ * <p>
+ * Текст драйвера наружу не попадает: в нём имя ограничения и значение ключа, то есть адрес или его blind index
+ */
+public final class ConstraintViolations {
+
+    public static final String DUPLICATE_EMAIL = "Employee with this email already exists";
+
+    private static final String EMAIL_CONSTRAINT = "employees_email_lookup_uq";
+
+    private ConstraintViolations() {
+    }
+
+    /**
+     * @return {@link #DUPLICATE_EMAIL} для уникальности email, иначе {@code fallback}
+     */
+    public static String reason(Throwable ex, String fallback) {
+        return EMAIL_CONSTRAINT.equals(constraintName(ex)) ? DUPLICATE_EMAIL : fallback;
+    }
+
+    /**
+     * Имя ограничения разбирает Hibernate, а без него (JdbcTemplate) оно есть в ответе сервера Postgres
+     */
+    static String constraintName(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName();
+            }
+            if (cause instanceof PSQLException psql && psql.getServerErrorMessage() != null) {
+                return psql.getServerErrorMessage().getConstraint();
+            }
+        }
+        return null;
+    }
+}
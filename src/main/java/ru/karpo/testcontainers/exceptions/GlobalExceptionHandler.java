@@ -1,28 +1,112 @@
 package ru.karpo.testcontainers.exceptions;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+/**
+ * Ответы об ошибках и счётчик http.server.errors с тегами exception и status
+ */
 @ControllerAdvice
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
+    private final MeterRegistry registry;
+    private final Map<ErrorType, Counter> errors = new ConcurrentHashMap<>();
+    private final Counter notFound;
+
+    public GlobalExceptionHandler(MeterRegistry registry) {
+        this.registry = registry;
+        this.notFound = counter(new ErrorType(ResourceNotFoundException.class, HttpStatus.NOT_FOUND.value()));
+    }
+
+    /**
+     * Быстрый путь 404: тело problem+json пишется сразу в ответ, без ErrorDetails и описания запроса
+     */
     @ExceptionHandler(ResourceNotFoundException.class)
-    public ResponseEntity<?> resourceNotFoundException(ResourceNotFoundException ex, WebRequest request) {
-        ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+    public void resourceNotFoundException(ResourceNotFoundException ex, HttpServletResponse response) throws IOException {
+        notFound.increment();
+        ProblemJson.NOT_FOUND.write(response, ex.getMessage());
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<?> badRequestException(BadRequestException ex, WebRequest request) {
+        return errorDetails(ex, ex.getMessage(), HttpStatus.BAD_REQUEST, request);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<?> preconditionFailedException(PreconditionFailedException ex, WebRequest request) {
+        return errorDetails(ex, ex.getMessage(), HttpStatus.PRECONDITION_FAILED, request);
+    }
+
+    /**
+     * Retry-After в целых секундах, не меньше одной
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<?> serviceUnavailableException(ServiceUnavailableException ex, WebRequest request) {
+        long retryAfter = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                .body(errorDetails(ex, ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE, request).getBody());
+    }
 
-        return new ResponseEntity<>(errorDetails, HttpStatus.NOT_FOUND);
+    /**
+     * Нарушение ограничения БД, например уникальности email. Текст драйвера в ответ не попадает:
+     * в нём имя ограничения и значение ключа, то есть адрес или его blind index
+     */
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<?> dataIntegrityViolationException(DataIntegrityViolationException ex, WebRequest request) {
+        return errorDetails(ex, ConstraintViolations.reason(ex, "Employee conflicts with existing data"),
+                HttpStatus.CONFLICT, request);
     }
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> globalExceptionHandler(Exception ex, WebRequest request) {
-        ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+        return errorDetails(ex, ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR, request);
+    }
+
+    /**
+     * Стандартные исключения Spring MVC (неизвестный путь, неподдерживаемый метод, нечитаемое тело)
+     */
+    @Override
+    protected ResponseEntity<Object> handleExceptionInternal(Exception ex, Object body, HttpHeaders headers,
+                                                             HttpStatusCode statusCode, WebRequest request) {
+        count(ex, statusCode.value());
+        return super.handleExceptionInternal(ex, body, headers, statusCode, request);
+    }
+
+    private ResponseEntity<?> errorDetails(Exception ex, String message, HttpStatus status, WebRequest request) {
+        count(ex, status.value());
+        ErrorDetails errorDetails = new ErrorDetails(new Date(), message, request.getDescription(false));
+
+        return new ResponseEntity<>(errorDetails, status);
+    }
+
+    private void count(Exception ex, int status) {
+        errors.computeIfAbsent(new ErrorType(ex.getClass(), status), this::counter).increment();
+    }
+
+    private Counter counter(ErrorType type) {
+        return Counter.builder("http.server.errors")
+                .description("Requests completed by an exception handler")
+                .tag("exception", type.exception().getSimpleName())
+                .tag("status", Integer.toString(type.status()))
+                .register(registry);
+    }
 
-        return new ResponseEntity<>(errorDetails, HttpStatus.INTERNAL_SERVER_ERROR);
+    private record ErrorType(Class<?> exception, int status) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package ru.karpo.testcontainers.exceptions;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Тело application/problem+json (RFC 9457) с заранее закодированными постоянными частями.
+ * <p>
+ * На каждый ответ кодируется только detail: без промежуточного объекта, Date и рефлексивной сериализации
+ */
+public final class ProblemJson {
+
+    public static final ProblemJson NOT_FOUND = new ProblemJson(HttpStatus.NOT_FOUND);
+
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpStatus status;
+    private final byte[] prefix;
+
+    private ProblemJson(HttpStatus status) {
+        this.status = status;
+        this.prefix = ("{\"type\":\"about:blank\",\"title\":\"" + status.getReasonPhrase() + "\",\"status\":"
+                + status.value() + ",\"detail\":\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public HttpStatus status() {
+        return status;
+    }
+
+    /**
+     * Пишет ответ целиком, минуя HttpMessageConverter и согласование типа по Accept
+     */
+    public void write(HttpServletResponse response, String detail) throws IOException {
+        byte[] quoted = quote(detail);
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_PROBLEM_JSON_VALUE);
+        response.setContentLength(prefix.length + quoted.length + SUFFIX.length);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(prefix);
+        out.write(quoted);
+        out.write(SUFFIX);
+    }
+
+    /**
+     * Тело одним массивом, для ответов через ResponseEntity (WebFlux)
+     */
+    public byte[] encode(String detail) {
+        byte[] quoted = quote(detail);
+        byte[] body = new byte[prefix.length + quoted.length + SUFFIX.length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        System.arraycopy(quoted, 0, body, prefix.length, quoted.length);
+        System.arraycopy(SUFFIX, 0, body, prefix.length + quoted.length, SUFFIX.length);
+        return body;
+    }
+
+    private static byte[] quote(String detail) {
+        return JsonStringEncoder.getInstance().quoteAsUTF8(detail == null ? "" : detail);
+    }
+}
@@ -5,6 +5,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 
 import java.io.Serial;
 
+/**
+ * Ожидаемый исход, а не сбой: стек вызовов не заполняется. Его никто не читает, а при потоке запросов
+ * к несуществующим id заполнение стека было основной стоимостью ответа 404
+ */
 @ResponseStatus(value = HttpStatus.NOT_FOUND)
 public class ResourceNotFoundException extends Exception {
 
@@ -12,6 +16,6 @@ public class ResourceNotFoundException extends Exception {
     private static final long serialVersionUID = 1L;
 
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,29 @@
+package ru.karpo.testcontainers.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Перегрузка: запрос отклонён сразу, клиенту предлагается повторить через {@code retryAfter} (заголовок Retry-After).
+ * Как и у 404, стек вызовов не заполняется: отказ должен стоить меньше, чем обработка запроса
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends Exception {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,188 @@
+package ru.karpo.testcontainers.format;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import ru.karpo.testcontainers.exceptions.ErrorDetails;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Ответы в application/x-protobuf по схеме src/main/proto/employee.proto.
+ * <p>
+ * Сообщения кодируются прямо из сущностей через CodedOutputStream: сгенерированные классы и плагин protoc
+ * в сборке не нужны, и на каждого сотрудника не создаётся промежуточный объект сообщения.
+ * Список - EmployeeList, одиночный {@link Employee} или {@link EmployeeView} - Employee, {@link ErrorDetails} - Error.
+ * Только запись: запросы принимаются в JSON
+ */
+public class EmployeeProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType PROTOBUF = new MediaType("application", "x-protobuf");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int LIST_EMPLOYEES = 1;
+
+    private static final int EMPLOYEE_ID = 1;
+    private static final int EMPLOYEE_FIRST_NAME = 2;
+    private static final int EMPLOYEE_LAST_NAME = 3;
+    private static final int EMPLOYEE_EMAIL = 4;
+
+    private static final int ERROR_TIMESTAMP = 1;
+    private static final int ERROR_MESSAGE = 2;
+    private static final int ERROR_DETAILS = 3;
+
+    public EmployeeProtobufHttpMessageConverter() {
+        super(PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return isMessage(clazz) || Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * У коллекции проверяется тип элементов, если он известен. У {@code ResponseEntity<?>} он стёрт,
+     * тогда элементы проверяются перед записью
+     */
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (Collection.class.isAssignableFrom(clazz)) {
+            Class<?> element = ResolvableType.forType(type != null ? type : clazz).asCollection().resolveGeneric(0);
+            return element == null || isMessage(element);
+        }
+        return isMessage(clazz);
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (value instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                if (!isMessage(element.getClass())) {
+                    throw new HttpMessageNotWritableException(
+                            element.getClass().getName() + " cannot be written as " + PROTOBUF);
+                }
+            }
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody(), BUFFER_SIZE);
+        if (value instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                output.writeTag(LIST_EMPLOYEES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(size(element));
+                writeFields(output, element);
+            }
+        } else {
+            writeFields(output, value);
+        }
+        output.flush();
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(PROTOBUF + " is supported for responses only", inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(PROTOBUF + " is supported for responses only", inputMessage);
+    }
+
+    private static boolean isMessage(Class<?> clazz) {
+        return Employee.class.isAssignableFrom(clazz) || EmployeeView.class == clazz || ErrorDetails.class == clazz;
+    }
+
+    /**
+     * Длина сообщения нужна до записи его полей: вложенное сообщение кодируется как length-delimited
+     */
+    private static int size(Object message) {
+        if (message instanceof Employee employee) {
+            return int64Size(EMPLOYEE_ID, employee.getId())
+                    + stringSize(EMPLOYEE_FIRST_NAME, employee.getFirstName())
+                    + stringSize(EMPLOYEE_LAST_NAME, employee.getLastName())
+                    + stringSize(EMPLOYEE_EMAIL, employee.getEmail());
+        }
+        if (message instanceof EmployeeView view) {
+            return int64Size(EMPLOYEE_ID, viewId(view))
+                    + stringSize(EMPLOYEE_FIRST_NAME, view.firstName())
+                    + stringSize(EMPLOYEE_LAST_NAME, view.lastName())
+                    + stringSize(EMPLOYEE_EMAIL, view.email());
+        }
+        ErrorDetails error = (ErrorDetails) message;
+        return int64Size(ERROR_TIMESTAMP, error.getTimestamp() == null ? 0 : error.getTimestamp().getTime())
+                + stringSize(ERROR_MESSAGE, error.getMessage())
+                + stringSize(ERROR_DETAILS, error.getDetails());
+    }
+
+    private static void writeFields(CodedOutputStream output, Object message) throws IOException {
+        if (message instanceof Employee employee) {
+            writeInt64(output, EMPLOYEE_ID, employee.getId());
+            writeString(output, EMPLOYEE_FIRST_NAME, employee.getFirstName());
+            writeString(output, EMPLOYEE_LAST_NAME, employee.getLastName());
+            writeString(output, EMPLOYEE_EMAIL, employee.getEmail());
+        } else if (message instanceof EmployeeView view) {
+            writeInt64(output, EMPLOYEE_ID, viewId(view));
+            writeString(output, EMPLOYEE_FIRST_NAME, view.firstName());
+            writeString(output, EMPLOYEE_LAST_NAME, view.lastName());
+            writeString(output, EMPLOYEE_EMAIL, view.email());
+        } else {
+            ErrorDetails error = (ErrorDetails) message;
+            writeInt64(output, ERROR_TIMESTAMP, error.getTimestamp() == null ? 0 : error.getTimestamp().getTime());
+            writeString(output, ERROR_MESSAGE, error.getMessage());
+            writeString(output, ERROR_DETAILS, error.getDetails());
+        }
+    }
+
+    /**
+     * id проекции прочитан всегда (для курсора), но в ответ попадает, только если запрошен
+     */
+    private static long viewId(EmployeeView view) {
+        return view.fields().contains(EmployeeField.ID) ? view.id() : 0;
+    }
+
+    /**
+     * Как и в proto3, значения по умолчанию (0 и пустая строка) не пишутся
+     */
+    private static int int64Size(int field, long value) {
+        return value == 0 ? 0 : CodedOutputStream.computeInt64Size(field, value);
+    }
+
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static void writeInt64(CodedOutputStream output, int field, long value) throws IOException {
+        if (value != 0) {
+            output.writeInt64(field, value);
+        }
+    }
+
+    private static void writeString(CodedOutputStream output, int field, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            output.writeString(field, value);
+        }
+    }
+}
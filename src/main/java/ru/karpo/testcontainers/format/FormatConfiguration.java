@@ -0,0 +1,80 @@
+package ru.karpo.testcontainers.format;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.util.Native;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактные форматы ответов и сжатие.
+ * <p>
+ * Формат выбирается по заголовку Accept: application/cbor, application/x-jackson-smile или application/x-protobuf.
+ * Конвертеры стоят в конце списка, поэтому запрос без Accept или с любым типом по-прежнему получает JSON
+ */
+@Configuration(proxyBeanMethods = false)
+public class FormatConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(FormatConfiguration.class);
+
+    /**
+     * CBOR и Smile Spring MVC добавил бы и сам, но с ObjectMapper по умолчанию. Здесь они собираются тем же
+     * билдером, что и JSON, со всеми настройками spring.jackson.*
+     */
+    @Bean
+    public WebMvcConfigurer formatWebMvcConfigurer(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        MappingJackson2CborHttpMessageConverter cbor = new MappingJackson2CborHttpMessageConverter(
+                builder.getObject().factory(new CBORFactory()).build());
+        MappingJackson2SmileHttpMessageConverter smile = new MappingJackson2SmileHttpMessageConverter(
+                builder.getObject().factory(new SmileFactory()).build());
+        EmployeeProtobufHttpMessageConverter protobuf = new EmployeeProtobufHttpMessageConverter();
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                        || converter instanceof MappingJackson2SmileHttpMessageConverter);
+                converters.add(cbor);
+                converters.add(smile);
+                converters.add(protobuf);
+            }
+        };
+    }
+
+    /**
+     * Включается вместе с gzip Tomcat (server.compression.enabled) и берёт у него порог и типы ответов
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "server.compression", name = "enabled", havingValue = "true")
+    public FilterRegistrationBean<ZstdCompressionFilter> zstdCompressionFilter(ServerProperties serverProperties,
+                                                                               @Value("${compression.zstd.level:3}") int level) {
+        Compression compression = serverProperties.getCompression();
+        List<MimeType> mimeTypes = Arrays.stream(compression.getMimeTypes()).map(MimeType::valueOf).toList();
+        FilterRegistrationBean<ZstdCompressionFilter> registration = new FilterRegistrationBean<>(
+                new ZstdCompressionFilter((int) compression.getMinResponseSize().toBytes(), mimeTypes, level));
+        try {
+            Native.load();
+        } catch (UnsatisfiedLinkError e) {
+            //zstd-jni несёт нативные библиотеки не для всех платформ, тогда остаётся только gzip
+            logger.warn("zstd native library is not available, responses are compressed with gzip only", e);
+            registration.setEnabled(false);
+        }
+        return registration;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.karpo.testcontainers.format;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import ru.karpo.testcontainers.controller.EmployeeController;
+
+/**
+ * Сильный ETag описывает байты ответа, поэтому у CBOR, Smile и protobuf он свой: к версии строки
+ * добавляется подтип формата, например {@code "3.cbor"}. У JSON ETag остаётся {@code "3"}.
+ * <p>
+ * Формат становится известен только здесь, после выбора конвертера, а Spring MVC сравнивает If-None-Match
+ * раньше, с ETag из контроллера. Поэтому для остальных форматов 304 отдаётся здесь же
+ */
+@ControllerAdvice(assignableTypes = EmployeeController.class)
+public class FormatETagAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        String eTag = response.getHeaders().getETag();
+        if (eTag == null || eTag.startsWith("W/") || MediaType.APPLICATION_JSON.equalsTypeAndSubtype(selectedContentType)) {
+            return body;
+        }
+        String formatETag = eTag.substring(0, eTag.length() - 1) + "." + selectedContentType.getSubtype() + "\"";
+        setETag(response, formatETag);
+        if (isNotModified(request, formatETag)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * Для GET Spring MVC уже перенёс ETag из заголовков ответа в сам HttpServletResponse (при проверке
+     * If-None-Match), а для PUT он ещё в заголовках: значение заменяется в ответе, иначе ETag ушёл бы дважды
+     */
+    private static void setETag(ServerHttpResponse response, String eTag) {
+        if (response instanceof ServletServerHttpResponse servletResponse) {
+            response.getHeaders().remove(HttpHeaders.ETAG);
+            servletResponse.getServletResponse().setHeader(HttpHeaders.ETAG, eTag);
+        } else {
+            response.getHeaders().setETag(eTag);
+        }
+    }
+
+    /**
+     * If-None-Match сравнивается слабо (RFC 9110): префикс W/ не учитывается
+     */
+    private static boolean isNotModified(ServerHttpRequest request, String eTag) {
+        if (request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD) {
+            return false;
+        }
+        return request.getHeaders().getIfNoneMatch().stream()
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(eTag));
+    }
+}
@@ -0,0 +1,299 @@
+package ru.karpo.testcontainers.format;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MimeType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Сжатие ответов zstd для клиентов, приславших {@code Accept-Encoding: zstd}. Gzip делает сам Tomcat
+ * (server.compression), а ответ, уже получивший здесь Content-Encoding, он повторно не сжимает.
+ * <p>
+ * Порог и типы те же, что у server.compression: первые {@code threshold} байт копятся в буфере, и сжатие
+ * включается, только когда ответ их превысил, а его Content-Type есть в списке. Короткий ответ уходит как есть
+ * с известным Content-Length. Асинхронные ответы (SSE) не сжимаются
+ */
+public class ZstdCompressionFilter extends OncePerRequestFilter {
+
+    static final String ZSTD = "zstd";
+
+    private final int threshold;
+    private final List<MimeType> mimeTypes;
+    private final int level;
+
+    public ZstdCompressionFilter(int threshold, List<MimeType> mimeTypes, int level) {
+        this.threshold = threshold;
+        this.mimeTypes = mimeTypes;
+        this.level = level;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if ("HEAD".equals(request.getMethod()) || !acceptsZstd(request.getHeaders(HttpHeaders.ACCEPT_ENCODING))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CompressingResponse compressing = new CompressingResponse(response);
+        chain.doFilter(request, compressing);
+        if (request.isAsyncStarted()) {
+            compressing.decide(false);
+        } else {
+            compressing.finish();
+        }
+    }
+
+    /**
+     * zstd с ненулевым q. Предпочтения клиента между zstd и gzip не учитываются: zstd сжимает не хуже и быстрее
+     */
+    static boolean acceptsZstd(Enumeration<String> headers) {
+        while (headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.split(";");
+                if (!ZSTD.equalsIgnoreCase(parts[0].trim())) {
+                    continue;
+                }
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Решение о сжатии принимается один раз: при переполнении буфера, при flush ответа несжимаемого типа
+     * (события SSE уходят сразу) или в конце запроса. До решения Content-Length только запоминается
+     */
+    private class CompressingResponse extends HttpServletResponseWrapper {
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(threshold);
+        private OutputStream target;
+        private boolean compressed;
+        private long contentLength = -1;
+        private BufferingOutputStream outputStream;
+        private PrintWriter writer;
+
+        CompressingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            if (outputStream == null) {
+                outputStream = new BufferingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                outputStream = new BufferingOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (target == null) {
+                contentLength = len;
+            } else if (!compressed) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            flush();
+            //до решения ответ не фиксируется: иначе заголовок Content-Encoding уже не добавить
+            if (target != null) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target == null) {
+                buffer.reset();
+            } else {
+                super.resetBuffer();
+            }
+        }
+
+        @Override
+        public void reset() {
+            if (target == null) {
+                buffer.reset();
+                contentLength = -1;
+            }
+            super.reset();
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            if (target != null) {
+                target.write(bytes, offset, length);
+                return;
+            }
+            buffer.write(bytes, offset, length);
+            if (buffer.size() >= threshold) {
+                decide(compressible());
+            }
+        }
+
+        void flush() throws IOException {
+            if (target == null && !compressible()) {
+                decide(false);
+            }
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                //весь ответ короче порога и уже в буфере: длина известна, и Tomcat не станет сжимать его gzip
+                if (contentLength < 0 && buffer.size() > 0) {
+                    contentLength = buffer.size();
+                }
+                decide(false);
+            }
+            if (compressed) {
+                //дописывает конец фрейма zstd
+                target.close();
+            }
+        }
+
+        void decide(boolean compress) throws IOException {
+            if (target != null) {
+                return;
+            }
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, ZSTD);
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                target = new ZstdOutputStream(response.getOutputStream(), level);
+                compressed = true;
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private boolean compressible() {
+            int status = getStatus();
+            String contentType = getContentType();
+            if (status < 200 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED || contentType == null
+                    || containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                return false;
+            }
+            //сильный ETag обещает те же байты, что и без сжатия: как и gzip в Tomcat, такой ответ не сжимается
+            String eTag = getHeader(HttpHeaders.ETAG);
+            if (eTag != null && !eTag.startsWith("W/")) {
+                return false;
+            }
+            MimeType type = MimeType.valueOf(contentType);
+            return mimeTypes.stream().anyMatch(type::equalsTypeAndSubtype);
+        }
+
+        private class BufferingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                CompressingResponse.this.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                CompressingResponse.this.flush();
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                throw new UnsupportedOperationException("Non-blocking writes are not supported with zstd compression");
+            }
+        }
+    }
+}
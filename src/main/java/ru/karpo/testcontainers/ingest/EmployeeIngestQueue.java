@@ -0,0 +1,257 @@
+package ru.karpo.testcontainers.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import ru.karpo.testcontainers.exceptions.ConstraintViolations;
+import ru.karpo.testcontainers.exceptions.ServiceUnavailableException;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.service.EmployeeBatchService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Отложенная запись создаваемых сотрудников (write-behind).
+ * <p>
+ * Запрос только кладёт запись в ограниченную очередь и сразу получает tracking id. Один фоновый поток собирает
+ * записи в группы до batch-size, ожидая добор группы не дольше max-delay, и сохраняет группу одной транзакцией
+ * с JDBC-батчами. Так всплеск создания занимает одно соединение пула вместо соединения на каждый запрос.
+ * <p>
+ * Гарантии: переполненная очередь отклоняет запись (503 с Retry-After), при остановке приложения очередь
+ * дописывается в базу до закрытия пула. Запись, принятая в очередь, теряется только при аварийном завершении JVM.
+ * Если группа не сохранилась (например, из-за дубликата email), её записи сохраняются по одной,
+ * и отказ получает только виновная
+ */
+@Component
+@ConditionalOnProperty(prefix = "employees.ingest", name = "enabled", havingValue = "true")
+public class EmployeeIngestQueue implements SmartLifecycle {
+
+    /**
+     * Очередь останавливается после веб-сервера (DEFAULT_PHASE - 2048): запросы, принятые во время
+     * graceful shutdown, ещё попадают в очередь и дописываются
+     */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeIngestQueue.class);
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    private final EmployeeBatchService batchService;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final Duration retryAfter;
+    private final Duration shutdownTimeout;
+    private final Cache<UUID, IngestStatus> statuses;
+    private final Counter written;
+    private final Counter failed;
+    private final Counter rejected;
+    /**
+     * Приём в очередь берёт read-блокировку, остановка - write: после остановки ни одна запись
+     * не попадёт в очередь, которую писатель уже дописал
+     */
+    private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "employee-ingest-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running;
+
+    public EmployeeIngestQueue(EmployeeBatchService batchService, MeterRegistry registry,
+                               @Value("${employees.ingest.capacity:10000}") int capacity,
+                               @Value("${employees.ingest.batch-size:500}") int batchSize,
+                               @Value("${employees.ingest.max-delay:50ms}") Duration maxDelay,
+                               @Value("${employees.ingest.retry-after:1s}") Duration retryAfter,
+                               @Value("${employees.ingest.shutdown-timeout:30s}") Duration shutdownTimeout,
+                               @Value("${employees.ingest.status-retention:10m}") Duration statusRetention) {
+        this.batchService = batchService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.retryAfter = retryAfter;
+        this.shutdownTimeout = shutdownTimeout;
+        //статусы живут status-retention, а предел по числу защищает память при долгом всплеске
+        this.statuses = Caffeine.newBuilder()
+                .expireAfterWrite(statusRetention)
+                .maximumSize(Math.max(capacity * 10L, 100_000L))
+                .build();
+        this.written = recordCounter(registry, "written");
+        this.failed = recordCounter(registry, "failed");
+        this.rejected = recordCounter(registry, "rejected");
+        Gauge.builder("employees.ingest.queue", queue, BlockingQueue::size)
+                .description("Employees accepted for write-behind and not yet written")
+                .register(registry);
+    }
+
+    /**
+     * @return статус QUEUED с tracking id для {@link #status(UUID)}
+     * @throws ServiceUnavailableException если очередь заполнена или приложение останавливается
+     */
+    public IngestStatus submit(Employee employee) throws ServiceUnavailableException {
+        employee.setId(0);
+        Pending pending = new Pending(UUID.randomUUID(), employee);
+        IngestStatus status = IngestStatus.queued(pending.trackingId());
+        acceptLock.readLock().lock();
+        try {
+            if (!running) {
+                rejected.increment();
+                throw new ServiceUnavailableException("Employee ingestion is stopped", retryAfter);
+            }
+            statuses.put(pending.trackingId(), status);
+            if (!queue.offer(pending)) {
+                statuses.invalidate(pending.trackingId());
+                rejected.increment();
+                throw new ServiceUnavailableException("Employee ingest queue is full", retryAfter);
+            }
+        } finally {
+            acceptLock.readLock().unlock();
+        }
+        return status;
+    }
+
+    /**
+     * @return статус или null, если tracking id неизвестен или статус старше status-retention
+     */
+    public IngestStatus status(UUID trackingId) {
+        return statuses.getIfPresent(trackingId);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer.execute(this::write);
+    }
+
+    /**
+     * Ждёт, пока писатель сохранит всё принятое, но не дольше shutdown-timeout
+     */
+    @Override
+    public void stop() {
+        acceptLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            acceptLock.writeLock().unlock();
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("{} queued employees were not written within {}", queue.size(), shutdownTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void write() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                logger.warn("Employee ingest writer interrupted, {} queued employees are not written", queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Employee ingest writer failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Добирает группу до batch-size, пока не истёк max-delay от первой записи. При остановке не ждёт
+     */
+    private void collect(List<Pending> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            List<Employee> saved = batchService.createAll(batch.stream().map(Pending::employee).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                statuses.put(batch.get(i).trackingId(),
+                        IngestStatus.written(batch.get(i).trackingId(), saved.get(i).getId()));
+            }
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            logger.debug("Batch of {} employees failed, writing them one by one", batch.size(), e);
+            for (Pending pending : batch) {
+                flush(List.of(pending));
+            }
+        }
+    }
+
+    /**
+     * Статус доступен клиенту, поэтому в нём фиксированная причина, а текст драйвера - только в журнале
+     */
+    private void fail(Pending pending, RuntimeException e) {
+        String reason = ConstraintViolations.reason(e, "Employee could not be written");
+        statuses.put(pending.trackingId(), IngestStatus.failed(pending.trackingId(), reason));
+        failed.increment();
+        logger.debug("Employee {} was not written: {}", pending.trackingId(),
+                NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+    }
+
+    private static Counter recordCounter(MeterRegistry registry, String result) {
+        return Counter.builder("employees.ingest.records")
+                .description("Employees submitted for write-behind by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private record Pending(UUID trackingId, Employee employee) {
+    }
+}
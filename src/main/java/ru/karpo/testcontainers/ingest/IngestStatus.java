@@ -0,0 +1,33 @@
+package ru.karpo.testcontainers.ingest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+/**
+ * Состояние записи, принятой через POST /employees:ingest
+ *
+ * @param employeeId id созданного сотрудника, когда запись сохранена
+ * @param error      причина отказа, когда запись не сохранена
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IngestStatus(UUID trackingId, State state, Long employeeId, String error) {
+
+    public enum State {
+        QUEUED,
+        WRITTEN,
+        FAILED
+    }
+
+    static IngestStatus queued(UUID trackingId) {
+        return new IngestStatus(trackingId, State.QUEUED, null, null);
+    }
+
+    static IngestStatus written(UUID trackingId, long employeeId) {
+        return new IngestStatus(trackingId, State.WRITTEN, employeeId, null);
+    }
+
+    static IngestStatus failed(UUID trackingId, String error) {
+        return new IngestStatus(trackingId, State.FAILED, null, error);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.karpo.testcontainers.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.karpo.testcontainers.metrics.QueryMetrics;
+
+import java.time.Duration;
+
+/**
+ * Адаптивный лимит одновременных запросов к API сотрудников. Включается employees.concurrency.enabled=true.
+ * <p>
+ * Лимит стоит перед контроллером, а не перед пулом: отказ обходится без соединения и без работы контроллера.
+ * Долгие потоки (выгрузка, лента изменений, COPY), пакетные операции (:batch) и очередь отложенной записи
+ * исключены: их время определяется объёмом, а не нагрузкой на базу, и такие замеры сбивали бы лимит
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "employees.concurrency", name = "enabled", havingValue = "true")
+public class ConcurrencyLimitConfiguration {
+
+    @Bean
+    public ConcurrencyLimiter employeeConcurrencyLimiter(MeterRegistry registry,
+                                                         @Value("${employees.concurrency.initial-limit:20}") int initialLimit,
+                                                         @Value("${employees.concurrency.min-limit:4}") int minLimit,
+                                                         @Value("${employees.concurrency.max-limit:200}") int maxLimit,
+                                                         @Value("${employees.concurrency.tolerance:1.5}") double tolerance,
+                                                         @Value("${employees.concurrency.smoothing:0.2}") double smoothing,
+                                                         @Value("${employees.concurrency.long-window:600}") int longWindow,
+                                                         @Value("${employees.concurrency.write-share:0.5}") double writeShare) {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, smoothing, longWindow, writeShare,
+                registry);
+    }
+
+    @Bean
+    public WebMvcConfigurer concurrencyLimitWebMvcConfigurer(ConcurrencyLimiter limiter, QueryMetrics queryMetrics,
+                                                             @Value("${employees.concurrency.retry-after:1s}") Duration retryAfter) {
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter, queryMetrics, retryAfter);
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry interceptors) {
+                interceptors.addInterceptor(interceptor)
+                        .addPathPatterns("/api/v1/employees", "/api/v1/employees/**")
+                        .excludePathPatterns("/api/v1/employees/stream", "/api/v1/employees/changes");
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package ru.karpo.testcontainers.limiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.karpo.testcontainers.exceptions.ServiceUnavailableException;
+import ru.karpo.testcontainers.metrics.QueryMetrics;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * GET и HEAD - чтение, остальные методы - запись. Отказ превращается в 503 с Retry-After до вызова контроллера.
+ * <p>
+ * Лимит получает время только тех запросов, которые выполнили SQL. Попадания в кэш отвечают за микросекунды:
+ * они тянули бы вниз долгое среднее, и лимит следовал бы за долей попаданий, а не за задержкой базы
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".start";
+    private static final String QUERIES_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".queries";
+
+    private final ConcurrencyLimiter limiter;
+    private final QueryMetrics queryMetrics;
+    private final Duration retryAfter;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter limiter, QueryMetrics queryMetrics, Duration retryAfter) {
+        this.limiter = limiter;
+        this.queryMetrics = queryMetrics;
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws ServiceUnavailableException {
+        ConcurrencyLimiter.Operation operation = operation(request);
+        if (!limiter.tryAcquire(operation)) {
+            throw new ServiceUnavailableException("Too many concurrent " + operation.name().toLowerCase(Locale.ROOT)
+                    + " requests, limit is " + limiter.getLimit(), retryAfter);
+        }
+        request.setAttribute(QUERIES_ATTRIBUTE, queryMetrics.threadQueries());
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        long rttNanos = System.nanoTime() - (Long) start;
+        request.removeAttribute(START_ATTRIBUTE);
+        if (queryMetrics.threadQueries() == (Long) request.getAttribute(QUERIES_ATTRIBUTE)) {
+            limiter.release(operation(request));
+        } else {
+            limiter.release(operation(request), rttNanos);
+        }
+    }
+
+    private static ConcurrencyLimiter.Operation operation(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)
+                ? ConcurrencyLimiter.Operation.READ
+                : ConcurrencyLimiter.Operation.WRITE;
+    }
+}
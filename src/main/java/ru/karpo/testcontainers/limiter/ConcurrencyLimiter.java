@@ -0,0 +1,107 @@
+package ru.karpo.testcontainers.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Допуск запросов к базе: одновременно выполняется не больше запросов, чем разрешает {@link GradientLimit}.
+ * Лишние отклоняются сразу, без ожидания соединения пула.
+ * <p>
+ * Чтение и запись получают гарантированные доли лимита. Когда лимит исчерпан, запрос проходит, только если
+ * его вид ещё не занял свою долю: всплеск чтений не вытесняет запись, и наоборот. Пока лимит не исчерпан,
+ * любой вид может занять и чужую долю
+ */
+public class ConcurrencyLimiter {
+
+    public enum Operation {
+        READ,
+        WRITE
+    }
+
+    private final GradientLimit limit;
+    private final Map<Operation, Partition> partitions = new EnumMap<>(Operation.class);
+    private int inFlight;
+
+    /**
+     * @param writeShare доля лимита, гарантированная записи; остальное гарантировано чтению
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                              int longWindow, double writeShare, MeterRegistry registry) {
+        this.limit = new GradientLimit(initialLimit, minLimit, maxLimit, tolerance, smoothing, longWindow);
+        partitions.put(Operation.READ, new Partition(Operation.READ, 1 - writeShare, registry));
+        partitions.put(Operation.WRITE, new Partition(Operation.WRITE, writeShare, registry));
+        Gauge.builder("employees.concurrency.limit", limit, GradientLimit::get)
+                .description("Concurrent database requests currently allowed")
+                .register(registry);
+    }
+
+    /**
+     * @return false, если запрос отклонён. Допущенный запрос обязан вызвать {@link #release}
+     */
+    public boolean tryAcquire(Operation operation) {
+        Partition partition = partitions.get(operation);
+        synchronized (this) {
+            int current = limit.get();
+            if (inFlight >= current && partition.inFlight >= Math.max(1, (int) Math.ceil(current * partition.share))) {
+                partition.rejected.increment();
+                return false;
+            }
+            inFlight++;
+            partition.inFlight++;
+        }
+        return true;
+    }
+
+    /**
+     * @param rttNanos время выполнения запроса, замер для лимита
+     */
+    public void release(Operation operation, long rttNanos) {
+        limit.onSample(rttNanos, decrement(operation));
+    }
+
+    /**
+     * Запрос не обращался к базе (ответ из кэша, 304, ошибка валидации): место освобождается,
+     * но его время ничего не говорит о нагрузке на базу и в лимит не попадает
+     */
+    public void release(Operation operation) {
+        decrement(operation);
+    }
+
+    /**
+     * @return число запросов в работе до освобождения
+     */
+    private synchronized int decrement(Operation operation) {
+        int current = inFlight;
+        inFlight--;
+        partitions.get(operation).inFlight--;
+        return current;
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    private static class Partition {
+
+        private final double share;
+        private final Counter rejected;
+        private int inFlight;
+
+        Partition(Operation operation, double share, MeterRegistry registry) {
+            String tag = operation.name().toLowerCase(Locale.ROOT);
+            this.share = share;
+            this.rejected = Counter.builder("employees.concurrency.rejected")
+                    .description("Requests rejected by the adaptive concurrency limit")
+                    .tag("operation", tag)
+                    .register(registry);
+            Gauge.builder("employees.concurrency.in.flight", this, partition -> partition.inFlight)
+                    .tag("operation", tag)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.karpo.testcontainers.limiter;
+
+/**
+ * Допустимое число одновременных запросов, подстраиваемое по задержке (по мотивам Gradient2 из Netflix concurrency-limits).
+ * <p>
+ * Долгое экспоненциальное среднее задержки служит ориентиром "без очереди". Если задержка очередного запроса
+ * выше него больше чем в tolerance раз, база не успевает, и лимит уменьшается пропорционально (градиент не ниже 0.5).
+ * Иначе лимит растёт на sqrt(limit). Новое значение сглаживается с прежним, чтобы один медленный запрос
+ * не обрушил лимит
+ */
+class GradientLimit {
+
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double longRttFactor;
+    private double estimatedLimit;
+    private volatile int limit;
+    private double longRtt;
+    private long samples;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing, int longWindow) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longRttFactor = 2.0 / (longWindow + 1);
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    int get() {
+        return limit;
+    }
+
+    /**
+     * @param rttNanos время обработки завершившегося запроса
+     * @param inFlight число одновременных запросов к моменту его завершения
+     */
+    synchronized void onSample(long rttNanos, int inFlight) {
+        double shortRtt = Math.max(rttNanos, 1);
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            longRtt += (shortRtt - longRtt) / samples;
+        } else {
+            longRtt += (shortRtt - longRtt) * longRttFactor;
+        }
+        //после перегрузки долгое среднее завышено, и лимит не восстанавливался бы: подтягиваем его к текущей задержке
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        //при нагрузке ниже половины лимита замеры не говорят, сколько выдержит база, и лимит не растёт
+        if (inFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
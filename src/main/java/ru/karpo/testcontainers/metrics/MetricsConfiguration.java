@@ -0,0 +1,64 @@
+package ru.karpo.testcontainers.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Метрики горячего пути поверх того, что Spring Boot публикует сам (http.server.requests, hikaricp.*, hibernate.*)
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    public QueryMetrics queryMetrics(MeterRegistry registry,
+                                     @Value("${datasource.slow-query.threshold:200ms}") Duration slowThreshold,
+                                     @Value("${datasource.slow-query.sample-rate:0.1}") double sampleRate) {
+        return new QueryMetrics(registry, slowThreshold, sampleRate);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer queryMetricsHibernateCustomizer(QueryMetrics queryMetrics) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, queryMetrics);
+    }
+
+    /**
+     * hibernate.session.events.auto принимает только имя класса, поэтому слушатель с QueryMetrics
+     * добавляется в каждый EntityManager, который создаёт Spring (транзакционный и общий)
+     */
+    @Bean
+    public static BeanPostProcessor queryTimingEntityManagerPostProcessor(ObjectProvider<QueryMetrics> queryMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractEntityManagerFactoryBean factory) {
+                    factory.setEntityManagerInitializer(entityManager -> entityManager.unwrap(Session.class)
+                            .addEventListeners(new QueryTimingListener(queryMetrics.getObject())));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer queryCountWebMvcConfigurer(QueryMetrics queryMetrics, MeterRegistry registry) {
+        QueryCountInterceptor interceptor = new QueryCountInterceptor(queryMetrics, registry);
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry interceptors) {
+                interceptors.addInterceptor(interceptor);
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package ru.karpo.testcontainers.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Число SQL-запросов на HTTP-запрос с теми же тегами method/uri, что и у http.server.requests
+ */
+public class QueryCountInterceptor implements HandlerInterceptor {
+
+    private final QueryMetrics queryMetrics;
+    private final MeterRegistry registry;
+
+    public QueryCountInterceptor(QueryMetrics queryMetrics, MeterRegistry registry) {
+        this.queryMetrics = queryMetrics;
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        queryMetrics.beginRequest();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("http.server.requests.queries")
+                .description("SQL statements executed per HTTP request")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+                .register(registry)
+                .record(queryMetrics.endRequest());
+    }
+}
@@ -0,0 +1,86 @@
+package ru.karpo.testcontainers.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время выполнения SQL, число запросов на HTTP-запрос и выборочный журнал медленных запросов вместо show-sql.
+ * <p>
+ * Hibernate передаёт сюда текст каждого подготовленного запроса (StatementInspector), а время выполнения
+ * сообщает QueryTimingListener, который MetricsConfiguration добавляет в каждую сессию
+ */
+public class QueryMetrics implements StatementInspector {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private final ThreadLocal<String> lastSql = new ThreadLocal<>();
+    private final ThreadLocal<int[]> requestQueries = new ThreadLocal<>();
+    private final ThreadLocal<long[]> threadQueries = ThreadLocal.withInitial(() -> new long[1]);
+    private final long slowThresholdNanos;
+    private final double sampleRate;
+    private final Timer executionTimer;
+    private final Counter slowCounter;
+
+    public QueryMetrics(MeterRegistry registry, Duration slowThreshold, double sampleRate) {
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.sampleRate = sampleRate;
+        this.executionTimer = Timer.builder("db.statement.execution")
+                .description("JDBC statement execution time, as seen by Hibernate")
+                .register(registry);
+        this.slowCounter = Counter.builder("db.statement.slow")
+                .description("Statements slower than the slow query threshold, including ones not sampled into the log")
+                .register(registry);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        lastSql.set(sql);
+        threadQueries.get()[0]++;
+        int[] counter = requestQueries.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        return sql;
+    }
+
+    void executed(long nanos) {
+        executionTimer.record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos < slowThresholdNanos) {
+            return;
+        }
+        slowCounter.increment();
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            logger.warn("Slow query took {} ms: {}", TimeUnit.NANOSECONDS.toMillis(nanos), lastSql.get());
+        }
+    }
+
+    /**
+     * @return число SQL-запросов, подготовленных в текущем потоке за всё время; разница двух значений
+     * показывает, обращался ли код между ними к базе
+     */
+    public long threadQueries() {
+        return threadQueries.get()[0];
+    }
+
+    void beginRequest() {
+        requestQueries.set(new int[1]);
+    }
+
+    /**
+     * @return число SQL-запросов, подготовленных в потоке с начала HTTP-запроса
+     */
+    int endRequest() {
+        int[] counter = requestQueries.get();
+        requestQueries.remove();
+        lastSql.remove();
+        return counter == null ? 0 : counter[0];
+    }
+}
@@ -0,0 +1,41 @@
+package ru.karpo.testcontainers.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Засекает выполнение JDBC-запросов и батчей. Экземпляр создаётся на каждую сессию
+ * (см. MetricsConfiguration), а сессия используется одним потоком
+ */
+public class QueryTimingListener extends BaseSessionEventListener {
+
+    private final QueryMetrics metrics;
+    private long startNanos;
+
+    public QueryTimingListener(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record();
+    }
+
+    private void record() {
+        metrics.executed(System.nanoTime() - startNanos);
+    }
+}
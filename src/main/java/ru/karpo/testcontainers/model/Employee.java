@@ -1,15 +1,26 @@
 package ru.karpo.testcontainers.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import ru.karpo.testcontainers.crypto.EmailLookupListener;
+import ru.karpo.testcontainers.crypto.EncryptedStringConverter;
 
 @Entity
 @Table(name = "employees")
+@EntityListeners(EmailLookupListener.class)
 public class Employee {
 
+    /**
+     * Шаг employees_id_seq: Hibernate (pooled optimizer) и загрузка через COPY берут id блоками такого размера
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     private long id;
     private String firstName;
     private String lastName;
     private String email;
+    private String emailLookup;
+    private long version;
 
     public Employee() {
     }
@@ -21,7 +32,9 @@ public class Employee {
     }
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employees_id_seq")
+    @SequenceGenerator(name = "employees_id_seq", sequenceName = "employees_id_seq",
+            allocationSize = ID_ALLOCATION_SIZE)
     public long getId() {
         return id;
     }
@@ -49,6 +62,7 @@ public class Employee {
     }
 
     @Column(name = "email", nullable = false)
+    @Convert(converter = EncryptedStringConverter.class)
     public String getEmail() {
         return email;
     }
@@ -57,6 +71,30 @@ public class Employee {
         this.email = email;
     }
 
+    /**
+     * Ключ поиска по email, см. EmailLookup. Заполняется EmailLookupListener
+     */
+    @Column(name = "email_lookup")
+    @JsonIgnore
+    public String getEmailLookup() {
+        return emailLookup;
+    }
+
+    public void setEmailLookup(String emailLookup) {
+        this.emailLookup = emailLookup;
+    }
+
+    @Version
+    @Column(name = "version", nullable = false)
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Employee [id=" + id + ", firstName=" + firstName + ", lastName=" + lastName + ", emailId=" + email
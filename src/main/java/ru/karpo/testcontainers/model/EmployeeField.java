@@ -0,0 +1,52 @@
+package ru.karpo.testcontainers.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Поля сотрудника, которые можно запросить параметром {@code ?fields=}. Имя в JSON совпадает с атрибутом сущности
+ */
+public enum EmployeeField {
+
+    ID("id"),
+    FIRST_NAME("firstName"),
+    LAST_NAME("lastName"),
+    EMAIL("email");
+
+    private final String attribute;
+
+    EmployeeField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String attribute() {
+        return attribute;
+    }
+
+    /**
+     * @param fields имена через запятую, например {@code id,email}
+     * @throws IllegalArgumentException если имя неизвестно или не задано ни одного поля
+     */
+    public static Set<EmployeeField> parse(String fields) {
+        Set<EmployeeField> parsed = EnumSet.noneOf(EmployeeField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (!trimmed.isEmpty()) {
+                parsed.add(of(trimmed));
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        return parsed;
+    }
+
+    private static EmployeeField of(String attribute) {
+        for (EmployeeField field : values()) {
+            if (field.attribute.equals(attribute)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field: " + attribute);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.karpo.testcontainers.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Сотрудник с запрошенными полями, прочитанный проекцией без управляемой сущности.
+ * <p>
+ * В JSON попадают только {@code fields}. Незапрошенные столбцы не читаются, кроме id и version:
+ * они нужны для keyset-курсора и ETag
+ */
+@JsonSerialize(using = EmployeeView.Serializer.class)
+public record EmployeeView(Set<EmployeeField> fields, long id, String firstName, String lastName, String email,
+                           long version) {
+
+    public static EmployeeView of(Employee employee, Set<EmployeeField> fields) {
+        return new EmployeeView(fields, employee.getId(),
+                fields.contains(EmployeeField.FIRST_NAME) ? employee.getFirstName() : null,
+                fields.contains(EmployeeField.LAST_NAME) ? employee.getLastName() : null,
+                fields.contains(EmployeeField.EMAIL) ? employee.getEmail() : null,
+                employee.getVersion());
+    }
+
+    /**
+     * Порядок полей тот же, что у {@link Employee}
+     */
+    public static class Serializer extends StdSerializer<EmployeeView> {
+
+        public Serializer() {
+            super(EmployeeView.class);
+        }
+
+        @Override
+        public void serialize(EmployeeView view, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            for (EmployeeField field : view.fields()) {
+                switch (field) {
+                    case ID -> generator.writeNumberField(field.attribute(), view.id());
+                    case FIRST_NAME -> generator.writeStringField(field.attribute(), view.firstName());
+                    case LAST_NAME -> generator.writeStringField(field.attribute(), view.lastName());
+                    case EMAIL -> generator.writeStringField(field.attribute(), view.email());
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Реактивный вариант не поддерживает шифрование email (Vault Transit): зашифрованные адреса он отдавал бы
+ * как enc:v1:..., а свои записывал бы открытым текстом с ключом поиска, который servlet-вариант не найдёт.
+ * Поэтому приложение не стартует, если шифрование включено в его настройках или в базе уже есть ключи данных.
+ * <p>
+ * Проверка выполняется до старта Netty. Включить шифрование в servlet-варианте, пока работает реактивный, нельзя
+ */
+@Component
+public class EncryptionGuard implements SmartInitializingSingleton {
+
+    private static final String DATA_KEYS_EXIST = "SELECT EXISTS (SELECT 1 FROM employee_data_keys)";
+
+    private final DatabaseClient databaseClient;
+    private final boolean transitEnabled;
+
+    public EncryptionGuard(DatabaseClient databaseClient,
+                           @Value("${vault.transit.enabled:false}") boolean transitEnabled) {
+        this.databaseClient = databaseClient;
+        this.transitEnabled = transitEnabled;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (transitEnabled) {
+            throw new IllegalStateException("vault.transit.enabled is not supported by ReactiveEmployeeApplication");
+        }
+        Boolean encrypted = databaseClient.sql(DATA_KEYS_EXIST)
+                .map(row -> row.get(0, Boolean.class))
+                .one()
+                .block();
+        if (Boolean.TRUE.equals(encrypted)) {
+            throw new IllegalStateException("employee emails are encrypted (employee_data_keys is not empty), "
+                    + "ReactiveEmployeeApplication cannot read or write them");
+        }
+    }
+}
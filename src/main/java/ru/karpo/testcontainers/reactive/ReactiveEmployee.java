@@ -0,0 +1,96 @@
+package ru.karpo.testcontainers.reactive;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Отображение таблицы employees для R2DBC. JSON совпадает с Employee из servlet-варианта.
+ * <p>
+ * id при вставке берёт БД (nextval). Значение последовательности - верхняя граница блока Hibernate,
+ * поэтому с id, которые выдаёт JPA-вариант, оно не пересекается
+ */
+@Table("employees")
+public class ReactiveEmployee {
+
+    @Id
+    private Long id;
+    @Column("firstname")
+    private String firstName;
+    @Column("lastname")
+    private String lastName;
+    @Column("email")
+    private String email;
+    @Column("email_lookup")
+    private String emailLookup;
+    @Version
+    @Column("version")
+    private Long version;
+
+    public ReactiveEmployee() {
+    }
+
+    public ReactiveEmployee(String firstName, String lastName, String email) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    @JsonIgnore
+    public String getEmailLookup() {
+        return emailLookup;
+    }
+
+    public void setEmailLookup(String emailLookup) {
+        this.emailLookup = emailLookup;
+    }
+
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "ReactiveEmployee [id=" + id + ", firstName=" + firstName + ", lastName=" + lastName + ", emailId=" + email
+                + "]";
+    }
+}
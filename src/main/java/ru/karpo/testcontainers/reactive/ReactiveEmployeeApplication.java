@@ -0,0 +1,32 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Неблокирующий вариант API сотрудников: WebFlux на Netty и R2DBC поверх той же таблицы employees.
+ * <p>
+ * Запускается отдельно от DemoApplication, JDBC/JPA здесь не поднимаются. Подключение к БД задаётся через spring.r2dbc.*
+ */
+@SpringBootApplication(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class})
+public class ReactiveEmployeeApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveEmployeeApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .run(args);
+    }
+
+    /**
+     * Tomcat тоже есть в classpath и Spring Boot выбрал бы его первым, а нужен event loop Netty
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
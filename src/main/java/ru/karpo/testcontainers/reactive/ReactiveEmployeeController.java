@@ -0,0 +1,92 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.karpo.testcontainers.exceptions.PreconditionFailedException;
+
+import java.util.Map;
+
+/**
+ * Неблокирующий аналог EmployeeController с тем же форматом ответов.
+ * <p>
+ * GET /employees отдаёт строки потоком (JSON-массивом или NDJSON), поэтому в отличие от servlet-варианта
+ * limit по умолчанию не ограничен: сервер читает из БД ровно столько, сколько успевает принять клиент
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class ReactiveEmployeeController {
+
+    private final ReactiveEmployeeService employeeService;
+
+    public ReactiveEmployeeController(ReactiveEmployeeService employeeService) {
+        this.employeeService = employeeService;
+    }
+
+    @GetMapping(value = {"/employees", "/employees/stream"},
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ReactiveEmployee> getAllEmployees(@RequestParam(value = "after", defaultValue = "0") long after,
+                                                  @RequestParam(value = "limit", defaultValue = "0") long limit) {
+        return employeeService.stream(after, limit);
+    }
+
+    @GetMapping("/employees/{id}")
+    public Mono<ResponseEntity<ReactiveEmployee>> getEmployeeById(@PathVariable(value = "id") Long employeeId) {
+        return employeeService.getById(employeeId)
+                .map(employee -> ResponseEntity.ok().eTag(eTag(employee.getVersion())).body(employee));
+    }
+
+    @PostMapping("/employees")
+    public Mono<ReactiveEmployee> createEmployee(@RequestBody ReactiveEmployee employee) {
+        return employeeService.create(employee);
+    }
+
+    @PutMapping("/employees/{id}")
+    public Mono<ResponseEntity<ReactiveEmployee>> updateEmployee(@PathVariable(value = "id") Long employeeId,
+                                                                 @RequestBody ReactiveEmployee employeeDetails,
+                                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws PreconditionFailedException {
+        Long expectedVersion = parseIfMatch(ifMatch);
+        return employeeService.update(employeeId, employeeDetails, expectedVersion)
+                .map(employee -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (expectedVersion != null) {
+                        response.eTag(eTag(employee.getVersion()));
+                    }
+                    return response.body(employee);
+                });
+    }
+
+    @DeleteMapping("/employees/{id}")
+    public Mono<Map<String, Boolean>> deleteEmployee(@PathVariable(value = "id") Long employeeId,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws PreconditionFailedException {
+        return employeeService.delete(employeeId, parseIfMatch(ifMatch))
+                .thenReturn(Map.of("deleted", Boolean.TRUE));
+    }
+
+    private static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @return ожидаемая версия из If-Match или null, если заголовка нет либо он равен "*"
+     */
+    private static Long parseIfMatch(String ifMatch) throws PreconditionFailedException {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match does not match any version: " + ifMatch);
+        }
+    }
+}
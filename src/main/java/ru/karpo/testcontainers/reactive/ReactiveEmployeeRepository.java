@@ -0,0 +1,46 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveEmployeeRepository extends R2dbcRepository<ReactiveEmployee, Long> {
+
+    /**
+     * Строки приходят порциями по spring.r2dbc.properties.fetchSize и запрашиваются у БД по мере спроса подписчика
+     */
+    @Query("SELECT * FROM employees WHERE id > :after ORDER BY id LIMIT :limit")
+    Flux<ReactiveEmployee> findByIdGreaterThan(@Param("after") long after, @Param("limit") long limit);
+
+    @Query("SELECT * FROM employees WHERE id > :after ORDER BY id")
+    Flux<ReactiveEmployee> streamByIdGreaterThan(@Param("after") long after);
+
+    /**
+     * email_lookup считается в приложении ({@link ru.karpo.testcontainers.crypto.EmailLookup#normalize}):
+     * lower/trim Postgres нормализуют иначе, чем servlet-вариант, и уникальный индекс пропустил бы дубли
+     */
+    @Modifying
+    @Query("UPDATE employees SET firstname = :firstName, lastname = :lastName, email = :email, " +
+            "email_lookup = :emailLookup, version = version + 1 WHERE id = :id")
+    Mono<Integer> updateById(@Param("id") long id, @Param("firstName") String firstName,
+                             @Param("lastName") String lastName, @Param("email") String email,
+                             @Param("emailLookup") String emailLookup);
+
+    @Modifying
+    @Query("UPDATE employees SET firstname = :firstName, lastname = :lastName, email = :email, " +
+            "email_lookup = :emailLookup, version = version + 1 WHERE id = :id AND version = :version")
+    Mono<Integer> updateByIdAndVersion(@Param("id") long id, @Param("version") long version,
+                                       @Param("firstName") String firstName, @Param("lastName") String lastName,
+                                       @Param("email") String email, @Param("emailLookup") String emailLookup);
+
+    @Modifying
+    @Query("DELETE FROM employees WHERE id = :id")
+    Mono<Integer> removeById(@Param("id") long id);
+
+    @Modifying
+    @Query("DELETE FROM employees WHERE id = :id AND version = :version")
+    Mono<Integer> removeByIdAndVersion(@Param("id") long id, @Param("version") long version);
+}
@@ -0,0 +1,101 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.karpo.testcontainers.crypto.EmailLookup;
+import ru.karpo.testcontainers.exceptions.PreconditionFailedException;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+
+/**
+ * Те же операции, что и в EmployeeService, но без кэша: это отдельный процесс, и сбросить кэш
+ * servlet-варианта при изменении он не может
+ */
+@Service
+public class ReactiveEmployeeService {
+
+    private static final String ERROR_MESSAGE = "Employee not found for this id :: ";
+    private static final String VERSION_MISMATCH_MESSAGE = "Employee was modified concurrently, id :: ";
+
+    private final ReactiveEmployeeRepository employeeRepository;
+
+    public ReactiveEmployeeService(ReactiveEmployeeRepository employeeRepository) {
+        this.employeeRepository = employeeRepository;
+    }
+
+    /**
+     * Транзакция нужна, чтобы драйвер читал строки из открытого портала порциями по fetchSize,
+     * а не получал весь результат разом
+     */
+    @Transactional(readOnly = true)
+    public Flux<ReactiveEmployee> stream(long after, long limit) {
+        return limit > 0
+                ? employeeRepository.findByIdGreaterThan(after, limit)
+                : employeeRepository.streamByIdGreaterThan(after);
+    }
+
+    public Mono<ReactiveEmployee> getById(long employeeId) {
+        return employeeRepository.findById(employeeId)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(ERROR_MESSAGE + employeeId)));
+    }
+
+    public Mono<ReactiveEmployee> create(ReactiveEmployee employee) {
+        employee.setId(null);
+        employee.setVersion(null);
+        employee.setEmailLookup(emailLookup(employee.getEmail()));
+        return employeeRepository.save(employee);
+    }
+
+    /**
+     * @return сотрудник с новыми данными; версия известна, только если передана {@code expectedVersion}
+     */
+    public Mono<ReactiveEmployee> update(long employeeId, ReactiveEmployee details, Long expectedVersion) {
+        String lookup = emailLookup(details.getEmail());
+        Mono<Integer> updated = expectedVersion == null
+                ? employeeRepository.updateById(employeeId, details.getFirstName(), details.getLastName(),
+                        details.getEmail(), lookup)
+                : employeeRepository.updateByIdAndVersion(employeeId, expectedVersion, details.getFirstName(),
+                        details.getLastName(), details.getEmail(), lookup);
+        return checkAffected(updated, employeeId, expectedVersion)
+                .then(Mono.fromSupplier(() -> {
+                    ReactiveEmployee employee = new ReactiveEmployee(details.getFirstName(), details.getLastName(), details.getEmail());
+                    employee.setId(employeeId);
+                    employee.setVersion(expectedVersion == null ? null : expectedVersion + 1);
+                    return employee;
+                }));
+    }
+
+    public Mono<Void> delete(long employeeId, Long expectedVersion) {
+        Mono<Integer> deleted = expectedVersion == null
+                ? employeeRepository.removeById(employeeId)
+                : employeeRepository.removeByIdAndVersion(employeeId, expectedVersion);
+        return checkAffected(deleted, employeeId, expectedVersion);
+    }
+
+    /**
+     * Шифрование здесь не поддерживается ({@link EncryptionGuard}), поэтому ключ поиска - нормализованный адрес,
+     * как в EmailLookup без шифрования
+     */
+    private static String emailLookup(String email) {
+        return email == null ? null : EmailLookup.normalize(email);
+    }
+
+    /**
+     * Второй запрос к БД нужен только на редком пути ошибки, чтобы отличить 404 от 412
+     */
+    private Mono<Void> checkAffected(Mono<Integer> rows, long employeeId, Long expectedVersion) {
+        return rows.flatMap(count -> {
+            if (count > 0) {
+                return Mono.empty();
+            }
+            if (expectedVersion == null) {
+                return Mono.error(new ResourceNotFoundException(ERROR_MESSAGE + employeeId));
+            }
+            return employeeRepository.existsById(employeeId)
+                    .flatMap(exists -> Mono.error(exists
+                            ? new PreconditionFailedException(VERSION_MISMATCH_MESSAGE + employeeId)
+                            : new ResourceNotFoundException(ERROR_MESSAGE + employeeId)));
+        });
+    }
+}
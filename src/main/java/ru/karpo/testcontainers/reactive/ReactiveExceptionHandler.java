@@ -0,0 +1,39 @@
+package ru.karpo.testcontainers.reactive;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import ru.karpo.testcontainers.exceptions.ErrorDetails;
+import ru.karpo.testcontainers.exceptions.PreconditionFailedException;
+import ru.karpo.testcontainers.exceptions.ProblemJson;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+
+import java.util.Date;
+
+/**
+ * Те же ответы об ошибках, что и у GlobalExceptionHandler, для WebFlux
+ */
+@ControllerAdvice
+public class ReactiveExceptionHandler {
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<byte[]> resourceNotFoundException(ResourceNotFoundException ex) {
+        return ResponseEntity.status(ProblemJson.NOT_FOUND.status())
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .body(ProblemJson.NOT_FOUND.encode(ex.getMessage()));
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<?> preconditionFailedException(PreconditionFailedException ex, ServerHttpRequest request) {
+        ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), description(request));
+
+        return new ResponseEntity<>(errorDetails, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    private static String description(ServerHttpRequest request) {
+        return "uri=" + request.getPath().value();
+    }
+}
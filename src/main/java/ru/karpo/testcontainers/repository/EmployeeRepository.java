@@ -1,10 +1,102 @@
 package ru.karpo.testcontainers.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import ru.karpo.testcontainers.model.Employee;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee, Long>{
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, JpaSpecificationExecutor<Employee>,
+        EmployeeViewRepository {
+
+    /**
+     * Не read-only, в отличие от унаследованного: результат кладётся в кэш на expireAfterWrite, и устаревшая строка
+     * с отстающей реплики жила бы там дольше max-lag. Поэтому чтение по id всегда идёт на primary
+     */
+    @Override
+    @Transactional
+    Optional<Employee> findById(Long id);
+
+    /**
+     * На primary: строка, только что созданная там, должна давать 412, а не 404
+     */
+    @Override
+    @Transactional
+    boolean existsById(Long id);
+
+    /**
+     * Keyset-страница: сотрудники с id строго больше {@code after}, по возрастанию id.
+     * В отличие от OFFSET стоимость запроса не растёт с номером страницы - Postgres идёт по индексу первичного ключа.
+     * Транзакция read-only, как у унаследованного findAll, поэтому при включённых репликах запрос идёт на реплику
+     */
+    @Transactional(readOnly = true)
+    List<Employee> findByIdGreaterThanOrderByIdAsc(long after, Limit limit);
+
+    /**
+     * Потоковое чтение через JDBC-курсор. Драйвер Postgres выбирает строки порциями по fetch size
+     * только внутри транзакции (autocommit=false), поэтому вызывать метод нужно из @Transactional
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select e from Employee e where e.id > :after order by e.id")
+    Stream<Employee> streamByIdGreaterThan(@Param("after") long after);
+
+    /**
+     * Удаление одним DELETE ... WHERE id IN (...) без предварительной загрузки сущностей
+     *
+     * @return число удалённых строк
+     */
+    @Modifying
+    @Query("delete from Employee e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * UPDATE за один запрос без предварительного SELECT. Версия увеличивается так же, как при dirty checking
+     *
+     * @return 0, если сотрудника с таким id нет
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Employee e set e.firstName = :firstName, e.lastName = :lastName, e.email = :email, "
+            + "e.emailLookup = :emailLookup, e.version = e.version + 1 where e.id = :id")
+    int updateById(@Param("id") long id, @Param("firstName") String firstName, @Param("lastName") String lastName,
+                   @Param("email") String email, @Param("emailLookup") String emailLookup);
+
+    /**
+     * Оптимистическая блокировка без SELECT ... FOR UPDATE: строка обновляется, только если версия не изменилась
+     *
+     * @return 0, если сотрудника нет или его версия отличается от {@code version}
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Employee e set e.firstName = :firstName, e.lastName = :lastName, e.email = :email, "
+            + "e.emailLookup = :emailLookup, e.version = e.version + 1 where e.id = :id and e.version = :version")
+    int updateByIdAndVersion(@Param("id") long id, @Param("version") long version, @Param("firstName") String firstName,
+                             @Param("lastName") String lastName, @Param("email") String email,
+                             @Param("emailLookup") String emailLookup);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Employee e where e.id = :id")
+    int removeById(@Param("id") long id);
 
-}
\ No newline at end of file
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Employee e where e.id = :id and e.version = :version")
+    int removeByIdAndVersion(@Param("id") long id, @Param("version") long version);
+}
@@ -0,0 +1,32 @@
+package ru.karpo.testcontainers.repository;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.annotation.Transactional;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Чтение отдельных столбцов вместо сущностей (фрагмент {@link EmployeeRepository})
+ */
+public interface EmployeeViewRepository {
+
+    /**
+     * SELECT только запрошенных столбцов (плюс id и version) в read-only транзакции. Результат - кортежи,
+     * поэтому в persistence context не попадают ни сущности, ни их снимки для dirty checking
+     *
+     * @return не больше {@code limit} сотрудников по возрастанию id
+     */
+    @Transactional(readOnly = true)
+    List<EmployeeView> findViews(Specification<Employee> specification, Set<EmployeeField> fields, int limit);
+
+    /**
+     * Keyset-страница, как {@link EmployeeRepository#findByIdGreaterThanOrderByIdAsc}
+     */
+    default List<EmployeeView> findViewsByIdGreaterThan(long after, Set<EmployeeField> fields, int limit) {
+        return findViews((root, query, cb) -> cb.greaterThan(root.get("id"), after), fields, limit);
+    }
+}
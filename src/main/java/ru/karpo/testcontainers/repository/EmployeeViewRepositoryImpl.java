@@ -0,0 +1,65 @@
+package ru.karpo.testcontainers.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.jpa.domain.Specification;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Criteria-запрос с кортежем: набор столбцов задаётся на каждый вызов, а конвертер атрибута
+ * (расшифровка email) Hibernate применяет и к выбранному отдельно столбцу
+ */
+class EmployeeViewRepositoryImpl implements EmployeeViewRepository {
+
+    private static final String ID = "id";
+    private static final String VERSION = "version";
+
+    private final EntityManager entityManager;
+
+    EmployeeViewRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<EmployeeView> findViews(Specification<Employee> specification, Set<EmployeeField> fields, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Employee> root = query.from(Employee.class);
+        List<Selection<?>> selections = new ArrayList<>(fields.size() + 2);
+        selections.add(root.get(ID).alias(ID));
+        selections.add(root.get(VERSION).alias(VERSION));
+        for (EmployeeField field : fields) {
+            if (field != EmployeeField.ID) {
+                selections.add(root.get(field.attribute()).alias(field.attribute()));
+            }
+        }
+        query.multiselect(selections)
+                .where(specification.toPredicate(root, query, cb))
+                .orderBy(cb.asc(root.get(ID)));
+
+        List<Tuple> rows = entityManager.createQuery(query).setMaxResults(limit).getResultList();
+        List<EmployeeView> views = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            views.add(new EmployeeView(fields, row.get(ID, Long.class),
+                    column(row, fields, EmployeeField.FIRST_NAME),
+                    column(row, fields, EmployeeField.LAST_NAME),
+                    column(row, fields, EmployeeField.EMAIL),
+                    row.get(VERSION, Long.class)));
+        }
+        return views;
+    }
+
+    private static String column(Tuple row, Set<EmployeeField> fields, EmployeeField field) {
+        return fields.contains(field) ? row.get(field.attribute(), String.class) : null;
+    }
+}
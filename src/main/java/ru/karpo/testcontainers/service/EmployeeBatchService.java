@@ -0,0 +1,115 @@
+package ru.karpo.testcontainers.service;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Массовые операции над сотрудниками в одной транзакции.
+ * <p>
+ * Hibernate копит INSERT/UPDATE и отправляет их JDBC-батчами размера hibernate.jdbc.batch_size.
+ * После каждого батча persistence context сбрасывается и очищается, чтобы память не росла с размером запроса
+ */
+@Service
+public class EmployeeBatchService {
+
+    private static final String ERROR_MESSAGE = "Employee not found for this id :: ";
+
+    private final EmployeeRepository employeeRepository;
+    private final EntityManager entityManager;
+    private final Cache employeeCache;
+    private final int batchSize;
+
+    public EmployeeBatchService(EmployeeRepository employeeRepository, EntityManager entityManager, CacheManager cacheManager,
+                                @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+        this.employeeRepository = employeeRepository;
+        this.entityManager = entityManager;
+        this.employeeCache = cacheManager.getCache(EmployeeService.EMPLOYEES_CACHE);
+        this.batchSize = batchSize;
+    }
+
+    @Transactional
+    public List<Employee> createAll(List<Employee> employees) {
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+            employee.setId(0);
+            entityManager.persist(employee);
+            if ((i + 1) % batchSize == 0) {
+                flushAndClear();
+            }
+        }
+        flushAndClear();
+        return employees;
+    }
+
+    @Transactional(rollbackFor = ResourceNotFoundException.class)
+    public List<Employee> updateAll(List<Employee> employeeDetails) throws ResourceNotFoundException {
+        List<Employee> updated = new ArrayList<>(employeeDetails.size());
+        for (int from = 0; from < employeeDetails.size(); from += batchSize) {
+            List<Employee> chunk = employeeDetails.subList(from, Math.min(from + batchSize, employeeDetails.size()));
+            Map<Long, Employee> existing = employeeRepository.findAllById(chunk.stream().map(Employee::getId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(Employee::getId, Function.identity()));
+
+            for (Employee details : chunk) {
+                Employee employee = existing.get(details.getId());
+                if (employee == null) {
+                    throw new ResourceNotFoundException(ERROR_MESSAGE + details.getId());
+                }
+                employee.setEmail(details.getEmail());
+                employee.setLastName(details.getLastName());
+                employee.setFirstName(details.getFirstName());
+                updated.add(employee);
+            }
+            flushAndClear();
+        }
+        evictAfterCommit(employeeDetails.stream().map(Employee::getId).toList());
+        return updated;
+    }
+
+    @Transactional
+    public int deleteAll(Collection<Long> employeeIds) {
+        List<Long> ids = List.copyOf(employeeIds);
+        int deleted = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            deleted += employeeRepository.deleteByIdIn(ids.subList(from, Math.min(from + batchSize, ids.size())));
+        }
+        evictAfterCommit(ids);
+        return deleted;
+    }
+
+    /**
+     * Вытеснение до коммита оставляет окно, в котором параллельное чтение снова закэширует старую строку
+     */
+    private void evictAfterCommit(Collection<Long> ids) {
+        if (employeeCache == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ids.forEach(employeeCache::evict);
+            }
+        });
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,397 @@
+package ru.karpo.testcontainers.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.karpo.testcontainers.crypto.EmailLookup;
+import ru.karpo.testcontainers.crypto.TransitEnvelopeEncryptor;
+import ru.karpo.testcontainers.exceptions.BadRequestException;
+import ru.karpo.testcontainers.model.Employee;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Массовая загрузка и выгрузка таблицы employees через COPY драйвера PostgreSQL.
+ * <p>
+ * Тела запроса и ответа проходят потоком через буферы фиксированного размера, поэтому память не зависит от объёма.
+ * Загрузка: строки проверяются и шифруются в приложении, через COPY попадают во временную таблицу,
+ * откуда одним INSERT переносятся в employees. Невалидные строки и дубли email отклоняются, не прерывая загрузку
+ */
+@Service
+public class EmployeeCopyService {
+
+    /**
+     * В ответе перечисляются только первые отклонённые строки, счётчик учитывает все
+     */
+    public static final int MAX_REPORTED_REJECTS = 1000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_NAME_LENGTH = 50;
+    private static final int MAX_EMAIL_LENGTH = 255;
+
+    private static final String CREATE_STAGING = """
+            CREATE TEMP TABLE employees_import (
+                line BIGINT NOT NULL,
+                firstname VARCHAR(50) NOT NULL,
+                lastname VARCHAR(50) NOT NULL,
+                email VARCHAR(255) NOT NULL,
+                email_lookup VARCHAR(255) NOT NULL
+            ) ON COMMIT DROP""";
+    private static final String COPY_TO_STAGING =
+            "COPY employees_import (line, firstname, lastname, email, email_lookup) FROM STDIN WITH (FORMAT csv)";
+    /**
+     * Дубли уже существующих адресов и повторы внутри файла (остаётся первая строка)
+     */
+    private static final String DELETE_DUPLICATES = """
+            DELETE FROM employees_import s
+            WHERE EXISTS (SELECT 1 FROM employees e WHERE e.email_lookup = s.email_lookup)
+               OR EXISTS (SELECT 1 FROM employees_import d WHERE d.email_lookup = s.email_lookup AND d.line < s.line)
+            RETURNING s.line""";
+    /**
+     * id выдаются так же, как в Hibernate (pooled optimizer): один nextval на блок из {@link Employee#ID_ALLOCATION_SIZE}
+     * строк, значение - верхняя граница блока. Через DEFAULT каждая строка тратила бы целый блок.
+     * Блоки выбираются один раз (MATERIALIZED), иначе соединение могло бы перезапустить nextval.
+     * ON CONFLICT защищает от адресов, вставленных параллельно после DELETE_DUPLICATES
+     */
+    private static final String INSERT_FROM_STAGING = """
+            WITH rows AS (
+                SELECT row_number() OVER (ORDER BY line) - 1 AS n, firstname, lastname, email, email_lookup
+                FROM employees_import
+            ), blocks AS MATERIALIZED (
+                SELECT row_number() OVER () - 1 AS block, nextval('employees_id_seq') AS hi
+                FROM generate_series(1, ((SELECT count(*) FROM employees_import) + %1$d - 1) / %1$d)
+            )
+            INSERT INTO employees (id, firstname, lastname, email, email_lookup)
+            SELECT b.hi - %1$d + 1 + r.n %% %1$d, r.firstname, r.lastname, r.email, r.email_lookup
+            FROM rows r JOIN blocks b ON b.block = r.n / %1$d
+            ORDER BY r.n
+            ON CONFLICT (email_lookup) DO NOTHING""".formatted(Employee.ID_ALLOCATION_SIZE);
+    private static final String EXPORT_QUERY =
+            "SELECT id, firstname AS \"firstName\", lastname AS \"lastName\", email FROM employees WHERE id > %d ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmployeeStreamService employeeStreamService;
+    private final ObjectProvider<TransitEnvelopeEncryptor> encryptor;
+    private final ObjectMapper objectMapper;
+
+    public EmployeeCopyService(JdbcTemplate jdbcTemplate, EmployeeStreamService employeeStreamService,
+                               ObjectProvider<TransitEnvelopeEncryptor> encryptor, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.employeeStreamService = employeeStreamService;
+        this.encryptor = encryptor;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Первая строка - заголовок с колонками firstName, lastName, email в любом порядке, остальные колонки (id) игнорируются
+     */
+    @Transactional(rollbackFor = BadRequestException.class)
+    public ImportResult importCsv(InputStream body) throws IOException, BadRequestException {
+        BufferedReader reader = reader(body);
+        RowParser parser = CsvRowParser.forHeader(reader.readLine());
+        return importRows(reader, parser, 1);
+    }
+
+    /**
+     * Один JSON-объект с полями firstName, lastName, email на строку
+     */
+    @Transactional
+    public ImportResult importNdjson(InputStream body) {
+        return importRows(reader(body), this::parseJson, 0);
+    }
+
+    /**
+     * Без шифрования COPY TO STDOUT пишет прямо в ответ. С шифрованием email нужно расшифровать,
+     * поэтому выгрузка идёт через JDBC-курсор {@link EmployeeStreamService}
+     */
+    @Transactional(readOnly = true)
+    public void exportCsv(long after, OutputStream out) throws IOException {
+        if (encryptor.getIfAvailable() != null) {
+            employeeStreamService.writeCsv(after, out);
+            return;
+        }
+        copyOut("COPY (" + EXPORT_QUERY.formatted(after) + ") TO STDOUT WITH (FORMAT csv, HEADER)", out);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportNdjson(long after, OutputStream out) throws IOException {
+        if (encryptor.getIfAvailable() != null) {
+            employeeStreamService.writeNdjson(after, out);
+            return;
+        }
+        //JSON строится в БД. В формате csv с непечатаемыми QUOTE и DELIMITER строка выходит как есть:
+        //в тексте row_to_json управляющие символы всегда экранированы, а формат text удвоил бы обратные слэши
+        copyOut("COPY (SELECT row_to_json(e) FROM (" + EXPORT_QUERY.formatted(after)
+                + ") e) TO STDOUT WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')", out);
+    }
+
+    private void copyOut(String sql, OutputStream out) {
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static BufferedReader reader(InputStream body) {
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+    }
+
+    /**
+     * @param skipped сколько строк уже прочитано из {@code reader}, для нумерации строк в отчёте
+     */
+    private ImportResult importRows(BufferedReader reader, RowParser parser, long skipped) {
+        //поиск бина на каждую строку заметен на миллионах строк, поэтому шифратор определяется один раз
+        TransitEnvelopeEncryptor available = encryptor.getIfAvailable();
+        Rejects rejects = new Rejects();
+        jdbcTemplate.execute(CREATE_STAGING);
+        long staged = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return copyIn(connection, reader, parser, skipped, available, rejects);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        jdbcTemplate.execute("CREATE INDEX ON employees_import (email_lookup, line)");
+        jdbcTemplate.execute("ANALYZE employees_import");
+        jdbcTemplate.query(DELETE_DUPLICATES, (RowCallbackHandler) rs -> rejects.duplicate(rs.getLong(1)));
+        long imported = jdbcTemplate.update(INSERT_FROM_STAGING);
+        //строки, которые отсеял ON CONFLICT, учитываются без номера
+        rejects.count += staged - rejects.duplicates - imported;
+        return new ImportResult(imported, rejects.count, rejects.reported);
+    }
+
+    private long copyIn(Connection connection, BufferedReader reader, RowParser parser, long skipped,
+                        TransitEnvelopeEncryptor encryptor, Rejects rejects) throws SQLException, IOException {
+        PGCopyOutputStream copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), COPY_TO_STAGING,
+                COPY_BUFFER_SIZE);
+        try {
+            Writer writer = new OutputStreamWriter(copy, StandardCharsets.UTF_8);
+            long lineNumber = skipped;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    writeStaged(writer, lineNumber, parser.parse(line), encryptor);
+                } catch (IllegalArgumentException e) {
+                    rejects.add(lineNumber, e.getMessage());
+                }
+            }
+            writer.flush();
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * email шифруется и индексируется так же, как EncryptedStringConverter и {@link EmailLookup}
+     */
+    private static void writeStaged(Writer writer, long lineNumber, Row row, TransitEnvelopeEncryptor encryptor)
+            throws IOException {
+        checkName("firstName", row.firstName());
+        checkName("lastName", row.lastName());
+        String email = row.email() == null ? "" : row.email().trim();
+        if (email.isEmpty()) {
+            throw new IllegalArgumentException("email is required");
+        }
+        if (email.indexOf('@') < 1 || email.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("email is not valid");
+        }
+        String stored = encryptor == null ? email : encryptor.encrypt(email);
+        if (stored.length() > MAX_EMAIL_LENGTH) {
+            throw new IllegalArgumentException("email is longer than allowed");
+        }
+        writer.write(Long.toString(lineNumber));
+        writeField(writer, row.firstName().trim());
+        writeField(writer, row.lastName().trim());
+        writeField(writer, stored);
+        String normalized = EmailLookup.normalize(email);
+        writeField(writer, encryptor == null ? normalized : encryptor.blindIndex(normalized));
+        writer.write('\n');
+    }
+
+    private static void checkName(String field, String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(field + " is required");
+        }
+        if (value.trim().length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException(field + " is longer than " + MAX_NAME_LENGTH + " characters");
+        }
+    }
+
+    /**
+     * Все поля в кавычках: так COPY не спутает пустую строку с NULL
+     */
+    private static void writeField(Writer writer, String value) throws IOException {
+        writer.write(",\"");
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private Row parseJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("malformed JSON: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("JSON object expected");
+        }
+        return new Row(text(node, "firstName"), text(node, "lastName"), text(node, "email"));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    public record ImportResult(long imported, long rejected, List<Reject> rejects) {
+    }
+
+    public record Reject(long line, String reason) {
+    }
+
+    private record Row(String firstName, String lastName, String email) {
+    }
+
+    /**
+     * @throws IllegalArgumentException с причиной отклонения строки
+     */
+    @FunctionalInterface
+    private interface RowParser {
+        Row parse(String line);
+    }
+
+    private static class Rejects {
+
+        private final List<Reject> reported = new ArrayList<>();
+        private long count;
+        private long duplicates;
+
+        void add(long line, String reason) {
+            count++;
+            if (reported.size() < MAX_REPORTED_REJECTS) {
+                reported.add(new Reject(line, reason));
+            }
+        }
+
+        void duplicate(long line) {
+            duplicates++;
+            add(line, "duplicate email");
+        }
+    }
+
+    /**
+     * CSV по RFC 4180 без переводов строк внутри полей: каждая физическая строка - одна запись
+     */
+    static class CsvRowParser implements RowParser {
+
+        private final int firstName;
+        private final int lastName;
+        private final int email;
+        private final int required;
+
+        private CsvRowParser(int firstName, int lastName, int email) {
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.required = Math.max(firstName, Math.max(lastName, email)) + 1;
+        }
+
+        /**
+         * Без корректного заголовка отклонилась бы каждая строка, поэтому такой файл не принимается целиком
+         */
+        static CsvRowParser forHeader(String header) throws BadRequestException {
+            if (header == null) {
+                throw new BadRequestException("CSV header is missing");
+            }
+            List<String> columns;
+            try {
+                columns = split(header);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid CSV header: " + e.getMessage());
+            }
+            List<String> names = columns.stream().map(column -> column.trim().toLowerCase(Locale.ROOT)).toList();
+            int firstName = names.indexOf("firstname");
+            int lastName = names.indexOf("lastname");
+            int email = names.indexOf("email");
+            if (firstName < 0 || lastName < 0 || email < 0) {
+                throw new BadRequestException("CSV header must contain firstName, lastName and email columns");
+            }
+            return new CsvRowParser(firstName, lastName, email);
+        }
+
+        @Override
+        public Row parse(String line) {
+            List<String> fields = split(line);
+            if (fields.size() < required) {
+                throw new IllegalArgumentException("expected at least " + required + " columns, got " + fields.size());
+            }
+            return new Row(fields.get(firstName), fields.get(lastName), fields.get(email));
+        }
+
+        static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean fieldStart = true;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStart = true;
+                    continue;
+                } else if (c == '"' && fieldStart) {
+                    quoted = true;
+                } else {
+                    field.append(c);
+                }
+                fieldStart = false;
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("malformed CSV: unterminated quoted field");
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.karpo.testcontainers.service;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import ru.karpo.testcontainers.crypto.EmailLookup;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Поиск сотрудников по индексам из db/init.sql:
+ * <ul>
+ *     <li>email - точное совпадение без учёта регистра по уникальному индексу email_lookup;</li>
+ *     <li>firstName/lastName - префикс без учёта регистра, {@code lower(col) LIKE 'abc%'} по индексам text_pattern_ops.</li>
+ * </ul>
+ * В SQL попадают только заданные фильтры, чтобы у каждого сочетания был свой план, а не общий план с {@code :p IS NULL OR ...}
+ */
+@Service
+public class EmployeeSearchService {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    private final EmployeeRepository employeeRepository;
+    private final EmailLookup emailLookup;
+
+    public EmployeeSearchService(EmployeeRepository employeeRepository, EmailLookup emailLookup) {
+        this.employeeRepository = employeeRepository;
+        this.emailLookup = emailLookup;
+    }
+
+    /**
+     * @param after keyset-курсор: возвращаются сотрудники с id больше {@code after}, по возрастанию id
+     */
+    public List<Employee> search(String email, String firstName, String lastName, long after, int limit) {
+        return employeeRepository.findBy(specification(email, firstName, lastName, after),
+                query -> query.sortBy(Sort.by("id")).limit(limit).all());
+    }
+
+    /**
+     * Тот же поиск, но читаются только столбцы {@code fields}
+     */
+    public List<EmployeeView> search(String email, String firstName, String lastName, long after, int limit,
+                                     Set<EmployeeField> fields) {
+        return employeeRepository.findViews(specification(email, firstName, lastName, after), fields, limit);
+    }
+
+    private Specification<Employee> specification(String email, String firstName, String lastName, long after) {
+        Specification<Employee> specification = (root, query, cb) -> cb.greaterThan(root.get("id"), after);
+        if (email != null) {
+            String lookup = emailLookup.of(email);
+            specification = specification.and((root, query, cb) -> cb.equal(root.get("emailLookup"), lookup));
+        }
+        if (firstName != null) {
+            specification = specification.and(startsWithIgnoreCase("firstName", firstName));
+        }
+        if (lastName != null) {
+            specification = specification.and(startsWithIgnoreCase("lastName", lastName));
+        }
+        return specification;
+    }
+
+    private static Specification<Employee> startsWithIgnoreCase(String attribute, String prefix) {
+        String pattern = escapeLike(prefix.toLowerCase(Locale.ROOT)) + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get(attribute)), pattern, LIKE_ESCAPE);
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package ru.karpo.testcontainers.service;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import ru.karpo.testcontainers.crypto.EmailLookup;
+import ru.karpo.testcontainers.exceptions.PreconditionFailedException;
+import ru.karpo.testcontainers.exceptions.ResourceNotFoundException;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.model.EmployeeField;
+import ru.karpo.testcontainers.model.EmployeeView;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Операции над одним сотрудником с read-through кэшем {@value #EMPLOYEES_CACHE}.
+ * <p>
+ * Изменяющие методы не транзакционные на уровне сервиса: каждый вызов репозитория фиксируется сам,
+ * поэтому @CacheEvict срабатывает уже после коммита и не даёт параллельному чтению вернуть в кэш старую версию
+ */
+@Service
+public class EmployeeService {
+
+    public static final String EMPLOYEES_CACHE = "employees";
+    private static final String ERROR_MESSAGE = "Employee not found for this id :: ";
+    private static final String VERSION_MISMATCH_MESSAGE = "Employee was modified concurrently, id :: ";
+
+    private final EmployeeRepository employeeRepository;
+    private final EmailLookup emailLookup;
+    private final CacheManager cacheManager;
+
+    public EmployeeService(EmployeeRepository employeeRepository, EmailLookup emailLookup, CacheManager cacheManager) {
+        this.employeeRepository = employeeRepository;
+        this.emailLookup = emailLookup;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Закэшированный экземпляр разделяется между потоками, поэтому его нельзя изменять
+     */
+    @Cacheable(cacheNames = EMPLOYEES_CACHE, key = "#employeeId")
+    public Employee getById(Long employeeId) throws ResourceNotFoundException {
+        return employeeRepository.findById(employeeId)
+                .orElseThrow(() -> new ResourceNotFoundException(ERROR_MESSAGE + employeeId));
+    }
+
+    /**
+     * Только столбцы {@code fields} без загрузки сущности. Если сотрудник уже в кэше, БД не запрашивается,
+     * но и сам кэш этот метод не заполняет
+     */
+    public EmployeeView getViewById(Long employeeId, Set<EmployeeField> fields) throws ResourceNotFoundException {
+        Cache cache = cacheManager.getCache(EMPLOYEES_CACHE);
+        Employee cached = cache == null ? null : cache.get(employeeId, Employee.class);
+        if (cached != null) {
+            return EmployeeView.of(cached, fields);
+        }
+        List<EmployeeView> views = employeeRepository.findViews(
+                (root, query, cb) -> cb.equal(root.get("id"), employeeId), fields, 1);
+        if (views.isEmpty()) {
+            throw new ResourceNotFoundException(ERROR_MESSAGE + employeeId);
+        }
+        return views.get(0);
+    }
+
+    /**
+     * Обновление одним UPDATE. Если задана {@code expectedVersion}, строка меняется только при совпадении версии
+     *
+     * @return сотрудник с новыми данными; версия известна, только если передана {@code expectedVersion}
+     */
+    @CacheEvict(cacheNames = EMPLOYEES_CACHE, key = "#employeeId")
+    public Employee update(Long employeeId, Employee employeeDetails, Long expectedVersion)
+            throws ResourceNotFoundException, PreconditionFailedException {
+        String lookup = emailLookup.of(employeeDetails.getEmail());
+        int updated = expectedVersion == null
+                ? employeeRepository.updateById(employeeId, employeeDetails.getFirstName(),
+                        employeeDetails.getLastName(), employeeDetails.getEmail(), lookup)
+                : employeeRepository.updateByIdAndVersion(employeeId, expectedVersion, employeeDetails.getFirstName(),
+                        employeeDetails.getLastName(), employeeDetails.getEmail(), lookup);
+        checkAffected(updated, employeeId, expectedVersion);
+
+        Employee employee = new Employee(employeeDetails.getFirstName(), employeeDetails.getLastName(), employeeDetails.getEmail());
+        employee.setId(employeeId);
+        if (expectedVersion != null) {
+            employee.setVersion(expectedVersion + 1);
+        }
+        return employee;
+    }
+
+    @CacheEvict(cacheNames = EMPLOYEES_CACHE, key = "#employeeId")
+    public void delete(Long employeeId, Long expectedVersion) throws ResourceNotFoundException, PreconditionFailedException {
+        int deleted = expectedVersion == null
+                ? employeeRepository.removeById(employeeId)
+                : employeeRepository.removeByIdAndVersion(employeeId, expectedVersion);
+        checkAffected(deleted, employeeId, expectedVersion);
+    }
+
+    /**
+     * Второй запрос к БД нужен только на редком пути ошибки, чтобы отличить 404 от 412
+     */
+    private void checkAffected(int rows, Long employeeId, Long expectedVersion)
+            throws ResourceNotFoundException, PreconditionFailedException {
+        if (rows > 0) {
+            return;
+        }
+        if (expectedVersion != null && employeeRepository.existsById(employeeId)) {
+            throw new PreconditionFailedException(VERSION_MISMATCH_MESSAGE + employeeId);
+        }
+        throw new ResourceNotFoundException(ERROR_MESSAGE + employeeId);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.karpo.testcontainers.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.karpo.testcontainers.model.Employee;
+import ru.karpo.testcontainers.repository.EmployeeRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка таблицы employees без материализации в памяти: строки читаются JDBC-курсором
+ * и сразу пишутся в выходной поток, после чего отсоединяются от persistence context
+ */
+@Service
+public class EmployeeStreamService {
+
+    private final EmployeeRepository employeeRepository;
+    private final EntityManager entityManager;
+    private final ObjectWriter writer;
+    private final ObjectMapper objectMapper;
+
+    public EmployeeStreamService(EmployeeRepository employeeRepository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.employeeRepository = employeeRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writerFor(Employee.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Transactional(readOnly = true)
+    public void writeNdjson(long after, OutputStream out) throws IOException {
+        try (JsonGenerator generator = createGenerator(out);
+             Stream<Employee> employees = employeeRepository.streamByIdGreaterThan(after)) {
+            employees.forEach(employee -> {
+                write(generator, employee);
+                writeRaw(generator, '\n');
+            });
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void writeJsonArray(long after, OutputStream out) throws IOException {
+        try (JsonGenerator generator = createGenerator(out);
+             Stream<Employee> employees = employeeRepository.streamByIdGreaterThan(after)) {
+            generator.writeStartArray();
+            employees.forEach(employee -> write(generator, employee));
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Тот же формат, что у COPY ... WITH (FORMAT csv, HEADER) в {@link EmployeeCopyService}
+     */
+    @Transactional(readOnly = true)
+    public void writeCsv(long after, OutputStream out) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write("id,firstName,lastName,email\n");
+        try (Stream<Employee> employees = employeeRepository.streamByIdGreaterThan(after)) {
+            employees.forEach(employee -> {
+                try {
+                    csv.write(Long.toString(employee.getId()));
+                    for (String value : new String[]{employee.getFirstName(), employee.getLastName(), employee.getEmail()}) {
+                        csv.write(',');
+                        csv.write(csvField(value));
+                    }
+                    csv.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                entityManager.detach(employee);
+            });
+        }
+        csv.flush();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.isEmpty() || value.chars().anyMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return objectMapper.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private void write(JsonGenerator generator, Employee employee) {
+        try {
+            writer.writeValue(generator, employee);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entityManager.detach(employee);
+    }
+
+    private static void writeRaw(JsonGenerator generator, char c) {
+        try {
+            generator.writeRaw(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
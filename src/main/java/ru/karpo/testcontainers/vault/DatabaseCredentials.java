@@ -0,0 +1,20 @@
+package ru.karpo.testcontainers.vault;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Логин/пароль из database secrets engine вместе с арендой (lease), под которой Vault их выдал
+ */
+public record DatabaseCredentials(String username, String password, String leaseId,
+                                  Duration leaseDuration, boolean renewable, Instant expiresAt) {
+
+    public DatabaseCredentials withExpiresAt(Instant expiresAt) {
+        return new DatabaseCredentials(username, password, leaseId, leaseDuration, renewable, expiresAt);
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseCredentials [username=" + username + ", leaseId=" + leaseId + ", expiresAt=" + expiresAt + "]";
+    }
+}
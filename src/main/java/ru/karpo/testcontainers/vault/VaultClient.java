@@ -0,0 +1,83 @@
+package ru.karpo.testcontainers.vault;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.function.Supplier;
+
+/**
+ * Тонкая обёртка над HTTP API Vault: путь передаётся без префикса /v1, ответ возвращается как есть.
+ * <p>
+ * Каждый вызов пишется в таймер {@value #TIMER} с тегами method, path (без query) и status
+ */
+public class VaultClient {
+
+    private static final String TOKEN_HEADER = "X-Vault-Token";
+    private static final String TIMER = "vault.requests";
+
+    private final RestClient restClient;
+    private final MeterRegistry registry;
+
+    public VaultClient(RestClient.Builder builder, String uri, String token) {
+        this(builder, uri, token, Metrics.globalRegistry);
+    }
+
+    public VaultClient(RestClient.Builder builder, String uri, String token, MeterRegistry registry) {
+        this.restClient = builder
+                .baseUrl(uri + "/v1")
+                .defaultHeader(TOKEN_HEADER, token)
+                .build();
+        this.registry = registry;
+    }
+
+    public JsonNode read(String path) {
+        return timed("GET", path, () -> restClient.get()
+                .uri(normalize(path))
+                .retrieve()
+                .body(JsonNode.class));
+    }
+
+    public JsonNode write(String path, Object body) {
+        return timed("PUT", path, () -> restClient.put()
+                .uri(normalize(path))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body)
+                .retrieve()
+                .body(JsonNode.class));
+    }
+
+    private JsonNode timed(String method, String path, Supplier<JsonNode> call) {
+        Timer.Sample sample = Timer.start(registry);
+        String status = "200";
+        try {
+            return call.get();
+        } catch (RestClientResponseException e) {
+            status = String.valueOf(e.getStatusCode().value());
+            throw e;
+        } catch (RuntimeException e) {
+            status = "IO_ERROR";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER)
+                    .description("Vault HTTP API call latency")
+                    .tag("method", method)
+                    .tag("path", pathTag(path))
+                    .tag("status", status)
+                    .register(registry));
+        }
+    }
+
+    private static String pathTag(String path) {
+        int query = path.indexOf('?');
+        return normalize(query < 0 ? path : path.substring(0, query));
+    }
+
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path : "/" + path;
+    }
+}
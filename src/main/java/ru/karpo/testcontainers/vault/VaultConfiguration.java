@@ -0,0 +1,116 @@
+package ru.karpo.testcontainers.vault;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.web.client.RestClient;
+import ru.karpo.testcontainers.crypto.DataKeyStore;
+import ru.karpo.testcontainers.crypto.TransitEnvelopeEncryptor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.Properties;
+
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(VaultProperties.class)
+@ConditionalOnProperty(prefix = "vault", name = "uri")
+public class VaultConfiguration {
+
+    @Bean
+    public VaultClient vaultClient(RestClient.Builder restClientBuilder, VaultProperties properties,
+                                   MeterRegistry meterRegistry) {
+        return new VaultClient(restClientBuilder, properties.getUri(), properties.getToken(), meterRegistry);
+    }
+
+    @Bean(initMethod = "start")
+    public VaultTokenRenewer vaultTokenRenewer(VaultClient vaultClient, VaultProperties properties) {
+        return new VaultTokenRenewer(vaultClient, properties.getRetryInterval());
+    }
+
+    @Bean
+    public VaultSecretCache vaultSecretCache(VaultClient vaultClient, VaultProperties properties) {
+        VaultProperties.Kv kv = properties.getKv();
+        return new VaultSecretCache(vaultClient, kv.getBackend(), kv.getTtl(), kv.getMaxStale(),
+                properties.getRetryInterval(), Clock.systemUTC());
+    }
+
+    /**
+     * Подключение пула HikariCP к динамическим кредам Vault вместо spring.datasource.username/password
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(prefix = "vault.database", name = "enabled", havingValue = "true")
+    static class DatabaseCredentialsConfiguration {
+
+        @Bean
+        public VaultDatabaseCredentialProvider vaultDatabaseCredentialProvider(VaultClient vaultClient,
+                                                                               VaultProperties properties) {
+            VaultProperties.Database database = properties.getDatabase();
+            return new VaultDatabaseCredentialProvider(vaultClient, database.getBackend(), database.getRole(),
+                    properties.getRetryInterval(), Clock.systemUTC());
+        }
+
+        /**
+         * Срабатывает до старта пула: Spring Boot создаёт HikariDataSource лениво, при первом getConnection
+         */
+        @Bean
+        public static BeanPostProcessor vaultCredentialsDataSourcePostProcessor(
+                ObjectProvider<VaultDatabaseCredentialProvider> credentialProvider) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    if (bean instanceof HikariDataSource hikari && hikari.getDataSource() == null) {
+                        VaultDatabaseCredentialProvider provider = credentialProvider.getObject();
+                        Properties driverProperties = new Properties();
+                        driverProperties.putAll(hikari.getDataSourceProperties());
+                        hikari.setDataSource(new VaultCredentialsDataSource(hikari.getJdbcUrl(), driverProperties, provider));
+                        hikari.setUsername(null);
+                        hikari.setPassword(null);
+                        provider.register(hikari);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(prefix = "vault.transit", name = "enabled", havingValue = "true")
+    static class TransitEncryptionConfiguration {
+
+        @Bean
+        public TransitEnvelopeEncryptor transitEnvelopeEncryptor(VaultClient vaultClient, VaultProperties properties,
+                                                                 JdbcTemplate jdbcTemplate,
+                                                                 DataSource dataSource) throws SQLException {
+            VaultProperties.Transit transit = properties.getTransit();
+            return new TransitEnvelopeEncryptor(vaultClient, new DataKeyStore(jdbcTemplate, unpooled(dataSource)),
+                    transit.getBackend(), transit.getKey(), transit.getDataKeyTtl(), transit.getKeyCacheSize(),
+                    Clock.systemUTC());
+        }
+
+        /**
+         * Источник физических соединений пула HikariCP в обход самого пула: VaultCredentialsDataSource,
+         * если пул работает на кредах Vault, иначе соединение по url и кредам пула
+         */
+        private static DataSource unpooled(DataSource dataSource) throws SQLException {
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource;
+            }
+            HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+            if (hikari.getDataSource() != null) {
+                return hikari.getDataSource();
+            }
+            DriverManagerDataSource driverManager = new DriverManagerDataSource(hikari.getJdbcUrl(),
+                    hikari.getUsername(), hikari.getPassword());
+            driverManager.setConnectionProperties(hikari.getDataSourceProperties());
+            return driverManager;
+        }
+    }
+}
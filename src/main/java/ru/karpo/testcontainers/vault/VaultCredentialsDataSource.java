@@ -0,0 +1,59 @@
+package ru.karpo.testcontainers.vault;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * DataSource для HikariCP, который открывает каждое физическое соединение с текущими кредами из Vault.
+ * <p>
+ * Логин и пароль берутся одним снимком, поэтому соединение никогда не получит логин от одной аренды,
+ * а пароль от другой (HikariConfig.setUsername/setPassword по отдельности такой гарантии не дают)
+ */
+public class VaultCredentialsDataSource extends AbstractDataSource {
+
+    private final String jdbcUrl;
+    private final Properties driverProperties;
+    private final VaultDatabaseCredentialProvider credentialProvider;
+
+    public VaultCredentialsDataSource(String jdbcUrl, Properties driverProperties,
+                                      VaultDatabaseCredentialProvider credentialProvider) {
+        this.jdbcUrl = jdbcUrl;
+        this.driverProperties = driverProperties;
+        this.credentialProvider = credentialProvider;
+    }
+
+    /**
+     * Те же креды для другого узла кластера, например реплики. Чтобы пул узла переходил на новые креды
+     * вместе с основным, его нужно зарегистрировать в {@link #getCredentialProvider()}
+     */
+    public VaultCredentialsDataSource withJdbcUrl(String jdbcUrl) {
+        return new VaultCredentialsDataSource(jdbcUrl, driverProperties, credentialProvider);
+    }
+
+    public VaultDatabaseCredentialProvider getCredentialProvider() {
+        return credentialProvider;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DatabaseCredentials credentials = credentialProvider.getCredentials();
+        return getConnection(credentials.username(), credentials.password());
+    }
+
+    /**
+     * Соединение с явно переданными кредами, в обход Vault. Hikari вызывает этот метод, только если в пуле
+     * заданы username и password, а VaultConfiguration их не задаёт
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Properties properties = new Properties();
+        properties.putAll(driverProperties);
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        return DriverManager.getConnection(jdbcUrl, properties);
+    }
+}
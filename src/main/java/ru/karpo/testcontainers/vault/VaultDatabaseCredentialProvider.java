@@ -0,0 +1,182 @@
+package ru.karpo.testcontainers.vault;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Источник динамических кредов БД из Vault с фоновым продлением аренды.
+ * <p>
+ * Аренда продлевается на 2/3 своего срока. Когда Vault продлевает её на меньший срок, чем выдал изначально,
+ * значит, близок max_ttl: провайдер берёт новые креды, а пулы мягко вытесняют старые соединения -
+ * свободные закрываются сразу, занятые после возврата в пул. Новые физические соединения открываются
+ * уже с новыми кредами, поэтому запросы в полёте не падают
+ */
+public class VaultDatabaseCredentialProvider implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VaultDatabaseCredentialProvider.class);
+    private static final double RENEW_AT_FRACTION = 2.0 / 3.0;
+
+    private final VaultClient vaultClient;
+    private final String backend;
+    private final String role;
+    private final Duration retryInterval;
+    private final Clock clock;
+
+    private final AtomicReference<DatabaseCredentials> current = new AtomicReference<>();
+    private final AtomicReference<ScheduledFuture<?>> next = new AtomicReference<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<HikariDataSource> dataSources = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vault-db-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public VaultDatabaseCredentialProvider(VaultClient vaultClient, String backend, String role,
+                                           Duration retryInterval, Clock clock) {
+        this.vaultClient = vaultClient;
+        this.backend = backend;
+        this.role = role;
+        this.retryInterval = retryInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Актуальные креды. Первый вызов синхронно запрашивает их у Vault и запускает фоновое продление
+     */
+    public DatabaseCredentials getCredentials() {
+        DatabaseCredentials credentials = current.get();
+        if (credentials != null) {
+            return credentials;
+        }
+        lock.lock();
+        try {
+            if (current.get() == null) {
+                rotate();
+            }
+            return current.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Пулы, которые нужно перевести на новые креды после ротации
+     */
+    public void register(HikariDataSource dataSource) {
+        dataSources.add(dataSource);
+    }
+
+    /**
+     * Принудительно получает новые креды и переводит на них пулы
+     */
+    public void rotate() {
+        lock.lock();
+        try {
+            DatabaseCredentials previous = current.get();
+            DatabaseCredentials fresh = issue();
+            current.set(fresh);
+            logger.info("Obtained database credentials {}", fresh);
+            if (previous != null) {
+                dataSources.forEach(VaultDatabaseCredentialProvider::softEvict);
+            }
+            schedule(fresh.leaseDuration());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DatabaseCredentials issue() {
+        JsonNode response = vaultClient.read(backend + "/creds/" + role);
+        Duration leaseDuration = Duration.ofSeconds(response.path("lease_duration").asLong());
+        return new DatabaseCredentials(
+                response.path("data").path("username").asText(),
+                response.path("data").path("password").asText(),
+                response.path("lease_id").asText(),
+                leaseDuration,
+                response.path("renewable").asBoolean(),
+                clock.instant().plus(leaseDuration));
+    }
+
+    private void renewOrRotate() {
+        DatabaseCredentials credentials = current.get();
+        try {
+            if (!credentials.renewable()) {
+                rotate();
+                return;
+            }
+            JsonNode response = vaultClient.write("sys/leases/renew", Map.of(
+                    "lease_id", credentials.leaseId(),
+                    "increment", credentials.leaseDuration().toSeconds()));
+            Duration renewed = Duration.ofSeconds(response.path("lease_duration").asLong());
+            if (renewed.compareTo(credentials.leaseDuration()) < 0) {
+                //Vault упёрся в max_ttl: остаток аренды уходит на дренаж старых соединений
+                logger.info("Lease {} is capped at {}, rotating credentials", credentials.leaseId(), renewed);
+                rotate();
+                return;
+            }
+            logger.debug("Renewed lease {} for {}", credentials.leaseId(), renewed);
+            current.compareAndSet(credentials, credentials.withExpiresAt(clock.instant().plus(renewed)));
+            schedule(renewed);
+        } catch (RuntimeException e) {
+            Instant now = clock.instant();
+            logger.warn("Failed to renew lease {}, retrying in {}", credentials.leaseId(), retryInterval, e);
+            if (now.plus(retryInterval).isAfter(credentials.expiresAt())) {
+                scheduleNext(this::rotateQuietly, retryInterval.toMillis());
+            } else {
+                scheduleNext(this::renewOrRotate, retryInterval.toMillis());
+            }
+        }
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to obtain database credentials, retrying in {}", retryInterval, e);
+            scheduleNext(this::rotateQuietly, retryInterval.toMillis());
+        }
+    }
+
+    private void schedule(Duration leaseDuration) {
+        scheduleNext(this::renewOrRotate, Math.max(1, (long) (leaseDuration.toMillis() * RENEW_AT_FRACTION)));
+    }
+
+    /**
+     * В расписании всегда одна задача: принудительная ротация не должна запускать вторую цепочку продлений
+     */
+    private void scheduleNext(Runnable task, long delayMillis) {
+        ScheduledFuture<?> previous = next.getAndSet(scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private static void softEvict(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            pool.softEvictConnections();
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,172 @@
+package ru.karpo.testcontainers.vault;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "vault")
+public class VaultProperties {
+
+    private String uri;
+    private String token;
+    private Duration retryInterval = Duration.ofSeconds(5);
+    private final Database database = new Database();
+    private final Kv kv = new Kv();
+    private final Transit transit = new Transit();
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public Duration getRetryInterval() {
+        return retryInterval;
+    }
+
+    public void setRetryInterval(Duration retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    public Kv getKv() {
+        return kv;
+    }
+
+    public Transit getTransit() {
+        return transit;
+    }
+
+    /**
+     * Динамические креды БД из database secrets engine
+     */
+    public static class Database {
+
+        private boolean enabled;
+        private String backend = "database";
+        private String role;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public void setBackend(String backend) {
+            this.backend = backend;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public void setRole(String role) {
+            this.role = role;
+        }
+    }
+
+    /**
+     * Локальный кэш секретов KV v2
+     */
+    public static class Kv {
+
+        private String backend = "secret";
+        private Duration ttl = Duration.ofMinutes(5);
+        private Duration maxStale = Duration.ofMinutes(30);
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public void setBackend(String backend) {
+            this.backend = backend;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getMaxStale() {
+            return maxStale;
+        }
+
+        public void setMaxStale(Duration maxStale) {
+            this.maxStale = maxStale;
+        }
+    }
+
+    /**
+     * Envelope encryption полей сущностей ключом Transit
+     */
+    public static class Transit {
+
+        private boolean enabled;
+        private String backend = "transit";
+        private String key;
+        private Duration dataKeyTtl = Duration.ofHours(1);
+        private long keyCacheSize = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public void setBackend(String backend) {
+            this.backend = backend;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public Duration getDataKeyTtl() {
+            return dataKeyTtl;
+        }
+
+        public void setDataKeyTtl(Duration dataKeyTtl) {
+            this.dataKeyTtl = dataKeyTtl;
+        }
+
+        public long getKeyCacheSize() {
+            return keyCacheSize;
+        }
+
+        public void setKeyCacheSize(long keyCacheSize) {
+            this.keyCacheSize = keyCacheSize;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ru.karpo.testcontainers.vault;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальный кэш секретов KV v2, чтобы чтение секрета на горячем пути было обращением к памяти.
+ * <p>
+ * Правила:
+ * <ul>
+ *     <li>ключ кэша - путь и версия секрета (0 - последняя версия);</li>
+ *     <li>запись обновляется в фоне на {@value #REFRESH_AT_PERCENT}% своего TTL, до того как устареет;</li>
+ *     <li>параллельные промахи по одному ключу схлопываются в один запрос к Vault;</li>
+ *     <li>если Vault недоступен, последнее значение отдаётся ещё не дольше maxStale после истечения TTL;</li>
+ *     <li>запись, которую никто не читал за весь TTL, не обновляется, а удаляется.</li>
+ * </ul>
+ */
+public class VaultSecretCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VaultSecretCache.class);
+    private static final int REFRESH_AT_PERCENT = 80;
+
+    private final VaultClient vaultClient;
+    private final String backend;
+    private final Duration ttl;
+    private final Duration maxStale;
+    private final Duration retryInterval;
+    private final Clock clock;
+
+    private final ConcurrentMap<SecretKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SecretKey, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vault-secret-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public VaultSecretCache(VaultClient vaultClient, String backend, Duration ttl, Duration maxStale,
+                            Duration retryInterval, Clock clock) {
+        this.vaultClient = vaultClient;
+        this.backend = backend;
+        this.ttl = ttl;
+        this.maxStale = maxStale;
+        this.retryInterval = retryInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Последняя версия секрета
+     */
+    public Map<String, String> get(String path) {
+        return get(path, 0);
+    }
+
+    public Map<String, String> get(String path, int version) {
+        SecretKey key = new SecretKey(path, version);
+        Instant now = clock.instant();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lastAccess = now;
+            if (now.isBefore(entry.expiresAt)) {
+                return entry.data;
+            }
+            if (now.isBefore(entry.expiresAt.plus(maxStale))) {
+                //Vault недоступен: фоновые повторы уже запланированы в refreshQuietly
+                return entry.data;
+            }
+        }
+        try {
+            return load(key).join().data;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public String get(String path, String field) {
+        return get(path).get(field);
+    }
+
+    /**
+     * Запрос к Vault выполняет первый пришедший поток, остальные ждут его результата
+     */
+    private CompletableFuture<Entry> load(SecretKey key) {
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            Entry entry = fetch(key);
+            entries.put(key, entry);
+            scheduler.schedule(() -> refreshIfUsed(key, entry), refreshDelay().toMillis(), TimeUnit.MILLISECONDS);
+            created.complete(entry);
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, created);
+        }
+        return created;
+    }
+
+    private Entry fetch(SecretKey key) {
+        String path = backend + "/data/" + key.path() + (key.version() > 0 ? "?version=" + key.version() : "");
+        JsonNode data = vaultClient.read(path).path("data").path("data");
+
+        Map<String, String> values = new LinkedHashMap<>();
+        data.fields().forEachRemaining(field -> values.put(field.getKey(),
+                field.getValue().isTextual() ? field.getValue().asText() : field.getValue().toString()));
+
+        Instant now = clock.instant();
+        return new Entry(Collections.unmodifiableMap(values), now.plus(ttl), now);
+    }
+
+    private void refreshIfUsed(SecretKey key, Entry refreshed) {
+        Entry entry = entries.get(key);
+        if (entry != refreshed) {
+            //запись уже заменена другим обновлением, у которого своё расписание
+            return;
+        }
+        if (!entry.lastAccess.isAfter(entry.loadedAt)) {
+            entries.remove(key, entry);
+            return;
+        }
+        refreshQuietly(key);
+    }
+
+    private void refreshQuietly(SecretKey key) {
+        try {
+            load(key).join();
+        } catch (CompletionException e) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            if (clock.instant().isAfter(entry.expiresAt.plus(maxStale))) {
+                logger.warn("Secret {} could not be refreshed within max stale period, evicting", key, e.getCause());
+                entries.remove(key, entry);
+                return;
+            }
+            logger.warn("Failed to refresh secret {}, retrying in {}", key, retryInterval, e.getCause());
+            scheduler.schedule(() -> refreshQuietly(key), retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Duration refreshDelay() {
+        return ttl.multipliedBy(REFRESH_AT_PERCENT).dividedBy(100);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private record SecretKey(String path, int version) {
+    }
+
+    private static final class Entry {
+
+        private final Map<String, String> data;
+        private final Instant expiresAt;
+        private final Instant loadedAt;
+        private volatile Instant lastAccess;
+
+        private Entry(Map<String, String> data, Instant expiresAt, Instant loadedAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+}
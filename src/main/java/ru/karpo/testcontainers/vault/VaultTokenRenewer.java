@@ -0,0 +1,73 @@
+package ru.karpo.testcontainers.vault;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Продлевает токен приложения в фоне, чтобы он не истёк между обращениями к Vault.
+ * Токены без TTL (например, root-токен dev-сервера) и непродлеваемые токены оставляются как есть
+ */
+public class VaultTokenRenewer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VaultTokenRenewer.class);
+    private static final double RENEW_AT_FRACTION = 2.0 / 3.0;
+
+    private final VaultClient vaultClient;
+    private final Duration retryInterval;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vault-token-renew");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public VaultTokenRenewer(VaultClient vaultClient, Duration retryInterval) {
+        this.vaultClient = vaultClient;
+        this.retryInterval = retryInterval;
+    }
+
+    public void start() {
+        scheduler.execute(this::lookup);
+    }
+
+    private void lookup() {
+        try {
+            JsonNode data = vaultClient.read("auth/token/lookup-self").path("data");
+            scheduleIfRenewable(data.path("renewable").asBoolean(), Duration.ofSeconds(data.path("ttl").asLong()));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to look up Vault token, retrying in {}", retryInterval, e);
+            scheduler.schedule(this::lookup, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void renew() {
+        try {
+            JsonNode auth = vaultClient.write("auth/token/renew-self", Map.of()).path("auth");
+            Duration ttl = Duration.ofSeconds(auth.path("lease_duration").asLong());
+            logger.debug("Renewed Vault token for {}", ttl);
+            scheduleIfRenewable(auth.path("renewable").asBoolean(), ttl);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to renew Vault token, retrying in {}", retryInterval, e);
+            scheduler.schedule(this::renew, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleIfRenewable(boolean renewable, Duration ttl) {
+        if (!renewable || ttl.isZero()) {
+            logger.debug("Vault token is not renewable or has no TTL, renewal disabled");
+            return;
+        }
+        scheduler.schedule(this::renew, (long) (ttl.toMillis() * RENEW_AT_FRACTION), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,361 @@
+package ru.karpo.testcontainers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.shaded.org.awaitility.Durations;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный тест пяти эндпоинтов EmployeeController смешанной нагрузкой с постоянным темпом (open model).
+ * <p>
+ * Запросы отправляются по расписанию независимо от ответов сервера, а латентность считается от запланированного
+ * момента отправки, а не от фактического: так задержка генератора или очередь на сервере не прячутся
+ * (поправка на coordinated omission). Распределения пишутся в HdrHistogram и сохраняются в target/load-test/*.hgrm.
+ * <p>
+ * Тест падает, если p50/p99/p99.9 какого-либо эндпоинта, доля ошибок или достигнутый темп выходят за пороги
+ * из load-test.properties. Запуск: mvn -Pload-test test
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = DemoApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.show-sql=false")
+public class EmployeeLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeLoadTest.class);
+    private static final Slf4jLogConsumer logConsumer = new Slf4jLogConsumer(LoggerFactory.getLogger("docker-output"));
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SEEDED_EMPLOYEES = 200;
+    private static final Path REPORT_DIR = Path.of("target", "load-test");
+
+    static DockerImageName myImage = DockerImageName.parse("postgres-tls:latest")
+            .asCompatibleSubstituteFor("postgres");
+
+    public static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>(myImage)
+            .withDatabaseName("testdb")
+            .withUsername("postgres")
+            .withPassword("postgres123")
+            .withUrlParam("ssl", "true")
+            .withUrlParam("sslmode", "verify-ca")
+            .withUrlParam("sslfactory", "ru.karpo.testcontainers.datasource.SessionCachingSSLSocketFactory")
+            .withUrlParam("sslfactorydelegate", "org.postgresql.ssl.NonValidatingFactory")
+            .withUrlParam("sslrootcert", "src/test/resources/docker/certs/root.crt")
+            .withUrlParam("sslcert", "src/test/resources/docker/certs/client.crt")
+            .withUrlParam("sslkey", "src/test/resources/docker/certs/client.key")
+            .withCommand("-c", "ssl=on",
+                    "-c", "ssl_cert_file=/var/lib/postgresql/server.crt",
+                    "-c", "ssl_key_file=/var/lib/postgresql/server.key",
+                    "-c", "ssl_ca_file=/var/lib/postgresql/root.crt",
+                    "-c", "log_destination=stderr",
+                    "-c", "logging_collector=off")
+            .withInitScript("db/init.sql")
+            .withStartupTimeout(Durations.ONE_SECOND);
+
+    @DynamicPropertySource
+    static void registerPgProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final List<Long> seededIds = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Long> deletableIds = new ConcurrentLinkedQueue<>();
+    //email уникален, поэтому создаваемые сотрудники нумеруются, а не выбираются случайно
+    private final AtomicLong createdSequence = new AtomicLong();
+
+    @BeforeClass
+    public static void init() {
+        postgresContainer.start();
+        postgresContainer.followOutput(logConsumer);
+    }
+
+    @AfterClass
+    public static void stop() {
+        postgresContainer.stop();
+    }
+
+    private String getRootUrl() {
+        return "http://localhost:" + port + "/api/v1";
+    }
+
+    @Test
+    public void shouldMeetLatencyAndThroughputTargetsUnderMixedLoad() throws Exception {
+        LoadSettings settings = LoadSettings.load();
+        seed();
+
+        logger.info("Warming up for {} at {} req/s", settings.warmUp(), settings.rate());
+        run(settings, settings.warmUp());
+
+        logger.info("Measuring for {} at {} req/s", settings.duration(), settings.rate());
+        PhaseResult result = run(settings, settings.duration());
+
+        List<String> failures = new ArrayList<>();
+        Files.createDirectories(REPORT_DIR);
+        logger.info(String.format("%-10s %8s %9s %9s %9s %9s", "endpoint", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Map.Entry<Operation, Histogram> entry : result.histograms().entrySet()) {
+            Operation operation = entry.getKey();
+            Histogram histogram = entry.getValue();
+            double p50 = millis(histogram.getValueAtPercentile(50));
+            double p99 = millis(histogram.getValueAtPercentile(99));
+            double p999 = millis(histogram.getValueAtPercentile(99.9));
+            logger.info(String.format("%-10s %8d %9.2f %9.2f %9.2f %9.2f", operation.key, histogram.getTotalCount(),
+                    p50, p99, p999, millis(histogram.getMaxValue())));
+
+            try (PrintStream out = new PrintStream(Files.newOutputStream(REPORT_DIR.resolve(operation.key + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, 1_000_000.0);
+            }
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            checkThreshold(failures, operation.key + " p50", p50, settings.maxP50());
+            checkThreshold(failures, operation.key + " p99", p99, settings.maxP99());
+            checkThreshold(failures, operation.key + " p99.9", p999, settings.maxP999());
+        }
+
+        double errorRatio = (double) result.errors() / Math.max(1, result.completed());
+        double throughputRatio = result.throughput() / settings.rate();
+        logger.info(String.format("throughput %.1f req/s (%.1f%% of target), errors %d of %d",
+                result.throughput(), throughputRatio * 100, result.errors(), result.completed()));
+        if (errorRatio > settings.maxErrorRatio()) {
+            failures.add(String.format("error ratio %.4f exceeds %.4f", errorRatio, settings.maxErrorRatio()));
+        }
+        if (throughputRatio < settings.minThroughputRatio()) {
+            failures.add(String.format("throughput %.1f req/s is below %.0f%% of target %d req/s",
+                    result.throughput(), settings.minThroughputRatio() * 100, settings.rate()));
+        }
+
+        Assert.assertTrue("Performance regression:\n" + String.join("\n", failures), failures.isEmpty());
+    }
+
+    /**
+     * GET и PUT работают по строкам, которые не удаляются, DELETE - по строкам, созданным во время теста
+     */
+    private void seed() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < SEEDED_EMPLOYEES * 2; i++) {
+            body.append(i == 0 ? "" : ",").append(employeeJson("Seed", i));
+        }
+        body.append("]");
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees:batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode created = objectMapper.readTree(response.body());
+        for (int i = 0; i < created.size(); i++) {
+            long id = created.get(i).path("id").asLong();
+            if (i < SEEDED_EMPLOYEES) {
+                seededIds.add(id);
+            } else {
+                deletableIds.add(id);
+            }
+        }
+    }
+
+    private PhaseResult run(LoadSettings settings, Duration duration) {
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3));
+        }
+        AtomicLong errors = new AtomicLong();
+        AtomicLong lastCompletion = new AtomicLong();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.rate();
+        long start = System.nanoTime();
+        for (long i = 0; i * intervalNanos < duration.toNanos(); i++) {
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Request request = nextRequest(settings);
+            Histogram histogram = histograms.get(request.operation());
+            inFlight.add(httpClient.sendAsync(request.httpRequest(), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, e) -> {
+                        long now = System.nanoTime();
+                        histogram.recordValue(Math.min(now - intended, HIGHEST_TRACKABLE_NANOS));
+                        lastCompletion.accumulateAndGet(now, Math::max);
+                        if (e != null || response.statusCode() >= 300) {
+                            errors.incrementAndGet();
+                        } else if (request.operation() == Operation.CREATE) {
+                            deletableIds.add(readId(response.body()));
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+
+        double elapsedSeconds = (lastCompletion.get() - start) / 1_000_000_000.0;
+        return new PhaseResult(histograms, inFlight.size(), errors.get(), inFlight.size() / elapsedSeconds);
+    }
+
+    private Request nextRequest(LoadSettings settings) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation operation = settings.pick(random.nextInt(settings.mixTotal()));
+        long id = seededIds.get(random.nextInt(seededIds.size()));
+        String url = getRootUrl() + "/employees";
+        switch (operation) {
+            case GET_BY_ID:
+                return new Request(operation, HttpRequest.newBuilder(URI.create(url + "/" + id)).GET().build());
+            case LIST:
+                return new Request(operation, HttpRequest.newBuilder(URI.create(url + "?after=" + random.nextLong(id) + "&limit=20"))
+                        .GET().build());
+            case UPDATE:
+                return new Request(operation, HttpRequest.newBuilder(URI.create(url + "/" + id))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(employeeJson("Updated", id)))
+                        .build());
+            case DELETE:
+                Long deletable = deletableIds.poll();
+                if (deletable != null) {
+                    return new Request(operation, HttpRequest.newBuilder(URI.create(url + "/" + deletable)).DELETE().build());
+                }
+                //удалять пока нечего: запрос заменяется созданием
+            default:
+                return new Request(Operation.CREATE, HttpRequest.newBuilder(URI.create(url))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(employeeJson("Load", createdSequence.incrementAndGet())))
+                        .build());
+        }
+    }
+
+    private long readId(String body) {
+        try {
+            return objectMapper.readTree(body).path("id").asLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected response body: " + body, e);
+        }
+    }
+
+    private static String employeeJson(String prefix, long n) {
+        return "{\"firstName\":\"" + prefix + n + "\",\"lastName\":\"Test\",\"email\":\"" + prefix.toLowerCase() + n
+                + "@example.com\"}";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void checkThreshold(List<String> failures, String name, double actual, double limit) {
+        if (actual > limit) {
+            failures.add(String.format("%s %.2f ms exceeds %.2f ms", name, actual, limit));
+        }
+    }
+
+    private enum Operation {
+        GET_BY_ID("get-by-id"),
+        LIST("list"),
+        CREATE("create"),
+        UPDATE("update"),
+        DELETE("delete");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+    }
+
+    private record Request(Operation operation, HttpRequest httpRequest) {
+    }
+
+    private record PhaseResult(Map<Operation, Histogram> histograms, long completed, long errors, double throughput) {
+    }
+
+    /**
+     * Настройки из load-test.properties, системные свойства имеют приоритет
+     */
+    private record LoadSettings(int rate, Duration warmUp, Duration duration, int[] mix,
+                                double maxP50, double maxP99, double maxP999,
+                                double minThroughputRatio, double maxErrorRatio) {
+
+        static LoadSettings load() throws IOException {
+            Properties properties = new Properties();
+            try (InputStream in = EmployeeLoadTest.class.getResourceAsStream("/load-test.properties")) {
+                properties.load(in);
+            }
+            properties.putAll(System.getProperties());
+
+            int[] mix = new int[Operation.values().length];
+            for (Operation operation : Operation.values()) {
+                mix[operation.ordinal()] = Integer.parseInt(properties.getProperty("load.mix." + operation.key, "0"));
+            }
+            return new LoadSettings(
+                    Integer.parseInt(properties.getProperty("load.rate")),
+                    DurationStyle.detectAndParse(properties.getProperty("load.warm-up")),
+                    DurationStyle.detectAndParse(properties.getProperty("load.duration")),
+                    mix,
+                    Double.parseDouble(properties.getProperty("load.max.p50")),
+                    Double.parseDouble(properties.getProperty("load.max.p99")),
+                    Double.parseDouble(properties.getProperty("load.max.p999")),
+                    Double.parseDouble(properties.getProperty("load.min.throughput-ratio")),
+                    Double.parseDouble(properties.getProperty("load.max.error-ratio")));
+        }
+
+        int mixTotal() {
+            int total = 0;
+            for (int weight : mix) {
+                total += weight;
+            }
+            return total;
+        }
+
+        Operation pick(int point) {
+            for (Operation operation : Operation.values()) {
+                point -= mix[operation.ordinal()];
+                if (point < 0) {
+                    return operation;
+                }
+            }
+            return Operation.GET_BY_ID;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package ru.karpo.testcontainers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import io.restassured.RestAssured;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -11,19 +16,49 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.shaded.org.awaitility.Awaitility;
 import org.testcontainers.shaded.org.awaitility.Durations;
 import org.testcontainers.utility.DockerImageName;
+import ru.karpo.testcontainers.model.Employee;
 import ru.karpo.testcontainers.repository.EmployeeRepository;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 
 /**
  * Демонстрация использования Testcontainers при работе с БД. В рамках теста поднимается контейнер с Postgres
@@ -73,7 +108,10 @@ public class PostgresTLSTest {
             //   - Проверяет также, что имя хоста сервера совпадает с именем, указанным в сертификате.
             //   - Обеспечивает более высокий уровень безопасности, так как гарантирует, что вы подключаетесь к ожидаемому серверу.
             .withUrlParam("sslmode", "verify-ca")
-            .withUrlParam("sslfactory", "org.postgresql.ssl.NonValidatingFactory")
+            //Фабрика переиспользует SSLContext и кэш TLS-сессий между соединениями пула и пишет время рукопожатия
+            //в метрику db.tls.handshake. Сами сокеты создаёт фабрика, заданная в sslfactorydelegate
+            .withUrlParam("sslfactory", "ru.karpo.testcontainers.datasource.SessionCachingSSLSocketFactory")
+            .withUrlParam("sslfactorydelegate", "org.postgresql.ssl.NonValidatingFactory")
             .withUrlParam("sslrootcert", ROOT_CERT_PATH)
             .withUrlParam("sslcert", CLIENT_CERT_PATH)
             .withUrlParam("sslkey", CLIENT_KEY_PATH)
@@ -101,11 +139,20 @@ public class PostgresTLSTest {
         registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
         registry.add("spring.datasource.username", postgresContainer::getUsername);
         registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("employees.ingest.enabled", () -> "true");
+        //лимит закреплён на 4, чтобы отказы в тесте были детерминированными
+        registry.add("employees.concurrency.enabled", () -> "true");
+        registry.add("employees.concurrency.initial-limit", () -> "4");
+        registry.add("employees.concurrency.min-limit", () -> "4");
+        registry.add("employees.concurrency.max-limit", () -> "4");
     }
 
     @Autowired
     private EmployeeRepository repository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @LocalServerPort
     private int port;
 
@@ -144,4 +191,709 @@ public class PostgresTLSTest {
                 .body("[1].lastName", equalTo("Smith"))
                 .body("[1].email", equalTo("jane.smith@example.com"));
     }
+
+    @Test
+    public void shouldReturnNextPageLinkWhenPageIsFull() {
+        long firstId = RestAssured.given()
+                .queryParam("limit", 1)
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .header("Link", containsString("rel=\"next\""))
+                .body("size()", is(1))
+                .body("[0].firstName", equalTo("John"))
+                .extract().jsonPath().getLong("[0].id");
+
+        RestAssured.given()
+                .queryParam("after", firstId)
+                .queryParam("limit", 1)
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].firstName", equalTo("Jane"));
+    }
+
+    @Test
+    public void shouldStreamEmployeesAsNdjson() {
+        String body = RestAssured.given()
+                .accept("application/x-ndjson")
+                .get(getRootUrl() + "/employees/stream")
+                .then()
+                .statusCode(200)
+                .contentType(startsWith("application/x-ndjson"))
+                .extract().asString();
+
+        var lines = body.lines().toList();
+        Assert.assertEquals(2, lines.size());
+        Assert.assertTrue(lines.get(0).contains("john.doe@example.com"));
+        Assert.assertTrue(lines.get(1).contains("jane.smith@example.com"));
+    }
+
+    @Test
+    public void shouldCreateUpdateAndDeleteEmployeesInBatch() {
+        List<Long> ids = RestAssured.given()
+                .contentType("application/json")
+                .body(List.of(
+                        Map.of("firstName", "Ann", "lastName", "Lee", "email", "ann.lee@example.com"),
+                        Map.of("firstName", "Bob", "lastName", "Ray", "email", "bob.ray@example.com"),
+                        Map.of("firstName", "Kim", "lastName", "Woo", "email", "kim.woo@example.com")))
+                .post(getRootUrl() + "/employees:batch")
+                .then()
+                .statusCode(200)
+                .body("size()", is(3))
+                .extract().jsonPath().getList("id", Long.class);
+
+        RestAssured.given()
+                .contentType("application/json")
+                .body(ids.stream()
+                        .map(id -> Map.of("id", id, "firstName", "Updated", "lastName", "Name", "email", id + "@example.com"))
+                        .toList())
+                .put(getRootUrl() + "/employees:batch")
+                .then()
+                .statusCode(200)
+                .body("firstName", everyItem(equalTo("Updated")));
+
+        RestAssured.given()
+                .contentType("application/json")
+                .body(ids)
+                .delete(getRootUrl() + "/employees:batch")
+                .then()
+                .statusCode(200)
+                .body("deleted", is(3));
+    }
+
+    /**
+     * Текст ошибки Postgres содержит значение ключа, поэтому в ответе только фиксированное сообщение
+     */
+    @Test
+    public void shouldRejectDuplicateEmailWithoutLeakingTheKey() {
+        RestAssured.given()
+                .contentType("application/json")
+                .body(Map.of("firstName", "John", "lastName", "Twin", "email", "JOHN.DOE@example.com"))
+                .post(getRootUrl() + "/employees")
+                .then()
+                .statusCode(409)
+                .body("message", equalTo("Employee with this email already exists"))
+                .body(not(containsString("john.doe")));
+    }
+
+    @Test
+    public void shouldServeRepeatedLookupsFromCache() {
+        long id = repository.findAll().get(0).getId();
+        for (int i = 0; i < 2; i++) {
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200)
+                    .body("id", is((int) id));
+        }
+
+        RestAssured.given()
+                .queryParam("tag", "cache:employees")
+                .queryParam("tag", "result:hit")
+                .get("http://localhost:" + port + "/actuator/metrics/cache.gets")
+                .then()
+                .statusCode(200)
+                .body("measurements[0].value", greaterThanOrEqualTo(1.0f));
+    }
+
+    @Test
+    public void shouldHonourConditionalRequests() {
+        long id = RestAssured.given()
+                .contentType("application/json")
+                .body(Map.of("firstName", "Max", "lastName", "Payne", "email", "max.payne@example.com"))
+                .post(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getLong("id");
+
+        String eTag = RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .extract().header("ETag");
+
+        RestAssured.given()
+                .header("If-None-Match", eTag)
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(304);
+
+        //у CBOR другие байты, поэтому и свой сильный ETag, с той же версией строки
+        String cborETag = RestAssured.given()
+                .accept("application/cbor")
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .header("ETag", not(equalTo(eTag)))
+                .extract().header("ETag");
+        RestAssured.given()
+                .accept("application/cbor")
+                .header("If-None-Match", cborETag)
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(304);
+
+        var details = Map.of("firstName", "Max", "lastName", "Payne", "email", "payne@example.com");
+        String newETag = RestAssured.given()
+                .contentType("application/json")
+                .header("If-Match", eTag)
+                .body(details)
+                .put(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .header("ETag", not(equalTo(eTag)))
+                .extract().header("ETag");
+
+        //старая версия больше не подходит
+        RestAssured.given()
+                .contentType("application/json")
+                .header("If-Match", eTag)
+                .body(details)
+                .put(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(412);
+
+        RestAssured.given()
+                .header("If-Match", newETag)
+                .delete(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200);
+
+        RestAssured.given()
+                .delete(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(404)
+                .contentType("application/problem+json")
+                .body(equalTo("{\"type\":\"about:blank\",\"title\":\"Not Found\",\"status\":404,"
+                        + "\"detail\":\"Employee not found for this id :: " + id + "\"}"));
+
+        RestAssured.given()
+                .queryParam("tag", "exception:ResourceNotFoundException")
+                .get("http://localhost:" + port + "/actuator/metrics/http.server.errors")
+                .then()
+                .statusCode(200)
+                .body("measurements[0].value", greaterThanOrEqualTo(1.0f));
+    }
+
+    @Test
+    public void shouldWarmUpPoolAndRecordTlsHandshakesBeforeReady() {
+        RestAssured.given()
+                .get("http://localhost:" + port + "/actuator/health/readiness")
+                .then()
+                .statusCode(200)
+                .body("status", equalTo("UP"));
+
+        RestAssured.given()
+                .get("http://localhost:" + port + "/actuator/metrics/db.tls.handshake")
+                .then()
+                .statusCode(200)
+                .body("measurements.find { it.statistic == 'COUNT' }.value", greaterThanOrEqualTo(10.0f));
+    }
+
+    @Test
+    public void shouldExposeHotPathMetricsForScraping() {
+        long id = repository.findAll().get(0).getId();
+        RestAssured.given()
+                .get(getRootUrl() + "/employees?after=0")
+                .then()
+                .statusCode(200);
+        RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200);
+
+        RestAssured.given()
+                .get("http://localhost:" + port + "/actuator/prometheus")
+                .then()
+                .statusCode(200)
+                .body(containsString("http_server_requests_seconds_bucket"))
+                .body(containsString("http_server_requests_queries_count{method=\"GET\",uri=\"/api/v1/employees\"}"))
+                .body(containsString("db_statement_execution_seconds_count"))
+                .body(containsString("hibernate_entities_loads_total"))
+                .body(containsString("hibernate_flushes_total"))
+                .body(containsString("hikaricp_connections_acquire_seconds_bucket"));
+    }
+
+    @Test
+    public void shouldSearchByEmailAndNamePrefixUsingIndexes() {
+        RestAssured.given()
+                .queryParam("lastName", "SM")
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].firstName", equalTo("Jane"));
+
+        RestAssured.given()
+                .queryParam("email", "John.Doe@Example.com")
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].lastName", equalTo("Doe"));
+
+        RestAssured.given()
+                .queryParam("firstName", "j")
+                .queryParam("lastName", "d")
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].email", equalTo("john.doe@example.com"));
+
+        RestAssured.given()
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(400);
+
+        //проверяется план того запроса, который сгенерировал Hibernate, а не написанного вручную
+        String lastNamePlan = explainExecuted("lastname\\) like", () -> RestAssured.given()
+                .queryParam("lastName", "SM")
+                .get(getRootUrl() + "/employees/search"));
+        String firstNamePlan = explainExecuted("firstname\\) like", () -> RestAssured.given()
+                .queryParam("firstName", "j")
+                .get(getRootUrl() + "/employees/search"));
+        String emailPlan = explainExecuted("email_lookup=", () -> RestAssured.given()
+                .queryParam("email", "John.Doe@Example.com")
+                .get(getRootUrl() + "/employees/search"));
+        List<String> plans = List.of(lastNamePlan, firstNamePlan, emailPlan);
+        Assert.assertTrue(plans.get(0), plans.get(0).contains("employees_lastname_lower_idx"));
+        Assert.assertTrue(plans.get(1), plans.get(1).contains("employees_firstname_lower_idx"));
+        Assert.assertTrue(plans.get(2), plans.get(2).contains("employees_email_lookup_uq"));
+    }
+
+    @Test
+    public void shouldImportAndExportEmployeesWithCopy() {
+        String csv = """
+                firstName,lastName,email
+                Ann,Copy,ann.copy@example.com
+                ,Copy,no.name@example.com
+                John,Again,JOHN.DOE@example.com
+                "Bob, Jr",Copy,bob.copy@example.com
+                """;
+        Long sequenceBefore = jdbcTemplate.queryForObject("SELECT last_value FROM employees_id_seq", Long.class);
+        RestAssured.given()
+                .contentType("text/csv")
+                .body(csv)
+                .post(getRootUrl() + "/employees:import")
+                .then()
+                .statusCode(200)
+                .body("imported", is(2))
+                .body("rejected", is(2))
+                .body("rejects.line", containsInAnyOrder(3, 4))
+                .body("rejects.reason", hasItem("duplicate email"));
+        //две строки - один блок id, как у Hibernate, а не блок на строку
+        Assert.assertEquals(sequenceBefore + Employee.ID_ALLOCATION_SIZE,
+                (long) jdbcTemplate.queryForObject("SELECT last_value FROM employees_id_seq", Long.class));
+
+        RestAssured.given()
+                .contentType("application/x-ndjson")
+                .body("{\"firstName\":\"Kim\",\"lastName\":\"Copy\",\"email\":\"kim.copy@example.com\"}\n{broken\n")
+                .post(getRootUrl() + "/employees:import")
+                .then()
+                .statusCode(200)
+                .body("imported", is(1))
+                .body("rejects[0].line", is(2));
+
+        RestAssured.given()
+                .contentType("text/csv")
+                .body("id,name\n1,Ann\n")
+                .post(getRootUrl() + "/employees:import")
+                .then()
+                .statusCode(400);
+
+        try {
+            String exported = RestAssured.given()
+                    .accept("text/csv")
+                    .get(getRootUrl() + "/employees:export")
+                    .then()
+                    .statusCode(200)
+                    .contentType(startsWith("text/csv"))
+                    .extract().asString();
+            List<String> lines = exported.lines().toList();
+            Assert.assertEquals("id,firstName,lastName,email", lines.get(0));
+            Assert.assertEquals(6, lines.size());
+            Assert.assertTrue(exported, exported.contains(",\"Bob, Jr\",Copy,bob.copy@example.com"));
+
+            String ndjson = RestAssured.given()
+                    .accept("application/x-ndjson")
+                    .get(getRootUrl() + "/employees:export")
+                    .then()
+                    .statusCode(200)
+                    .extract().asString();
+            Assert.assertEquals(5, ndjson.lines().count());
+            Assert.assertTrue(ndjson, ndjson.contains("\"firstName\":\"Bob, Jr\""));
+        } finally {
+            jdbcTemplate.update("DELETE FROM employees WHERE lastname = 'Copy'");
+        }
+    }
+
+    @Test
+    public void shouldPushEmployeeChangesAndResumeFromLastEventId() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees/changes"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> response = client.send(subscribe, HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, response.statusCode());
+
+        String createdId;
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> events = lines.iterator();
+            long id = RestAssured.given()
+                    .contentType("application/json")
+                    .body(Map.of("firstName", "Eve", "lastName", "Feed", "email", "eve.feed@example.com"))
+                    .post(getRootUrl() + "/employees")
+                    .then()
+                    .statusCode(200)
+                    .extract().jsonPath().getLong("id");
+            List<String> created = nextEvent(events);
+            Assert.assertTrue(created.toString(), created.contains("event:created"));
+            Assert.assertTrue(created.toString(), created.stream().anyMatch(line -> line.contains("eve.feed@example.com")));
+            createdId = created.stream().filter(line -> line.startsWith("id:")).findFirst().orElseThrow().substring(3);
+
+            RestAssured.given()
+                    .delete(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200);
+            List<String> deleted = nextEvent(events);
+            Assert.assertTrue(deleted.toString(), deleted.contains("event:deleted"));
+        }
+
+        //клиент переподключается с последним полученным id и дочитывает пропущенное удаление из таблицы
+        HttpRequest resume = HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees/changes"))
+                .header("Accept", "text/event-stream")
+                .header("Last-Event-ID", createdId)
+                .build();
+        try (Stream<String> lines = client.send(resume, HttpResponse.BodyHandlers.ofLines()).body()) {
+            List<String> replayed = nextEvent(lines.iterator());
+            Assert.assertTrue(replayed.toString(), replayed.contains("event:deleted"));
+        }
+
+        RestAssured.given()
+                .header("Last-Event-ID", "not-an-id")
+                .get(getRootUrl() + "/employees/changes")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void shouldReturnOnlyRequestedFields() {
+        RestAssured.given()
+                .queryParam("fields", "id,email")
+                .queryParam("limit", 1)
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .header("Link", containsString("fields=id,email"))
+                .body("size()", is(1))
+                .body("[0].keySet()", containsInAnyOrder("id", "email"))
+                .body("[0].email", equalTo("john.doe@example.com"));
+
+        long id = repository.findAll().get(0).getId();
+        String eTag = RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .extract().header("ETag");
+        RestAssured.given()
+                .queryParam("fields", "lastName")
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .header("ETag", equalTo(eTag))
+                .body("keySet()", containsInAnyOrder("lastName"))
+                .body("lastName", equalTo("Doe"));
+
+        RestAssured.given()
+                .queryParam("lastName", "sm")
+                .queryParam("fields", "firstName")
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(200)
+                .body("[0].keySet()", containsInAnyOrder("firstName"))
+                .body("[0].firstName", equalTo("Jane"));
+
+        RestAssured.given()
+                .queryParam("fields", "id,salary")
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void shouldNegotiateBinaryFormatsAndCompressLargePages() throws Exception {
+        List<Map<String, String>> employees = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            employees.add(Map.of("firstName", "Fiona" + i, "lastName", "Format", "email", "fiona" + i + ".format@example.com"));
+        }
+        RestAssured.given()
+                .contentType("application/json")
+                .body(employees)
+                .post(getRootUrl() + "/employees:batch")
+                .then()
+                .statusCode(200);
+        try {
+            long id = repository.findAll().get(0).getId();
+            byte[] cbor = RestAssured.given()
+                    .accept("application/cbor")
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200)
+                    .contentType("application/cbor")
+                    .header("Vary", containsString("Accept"))
+                    .extract().asByteArray();
+            Assert.assertEquals("john.doe@example.com", new ObjectMapper(new CBORFactory()).readTree(cbor).get("email").asText());
+
+            byte[] protobuf = RestAssured.given()
+                    .accept("application/x-protobuf")
+                    .queryParam("limit", 10)
+                    .get(getRootUrl() + "/employees")
+                    .then()
+                    .statusCode(200)
+                    .contentType("application/x-protobuf")
+                    .extract().asByteArray();
+            List<String> emails = protobufEmails(protobuf);
+            Assert.assertEquals(10, emails.size());
+            Assert.assertEquals("john.doe@example.com", emails.get(0));
+
+            //без Accept по-прежнему JSON
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200)
+                    .contentType(startsWith("application/json"));
+
+            //RestAssured сам шлёт Accept-Encoding: gzip и распаковывает ответ
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees")
+                    .then()
+                    .statusCode(200)
+                    .header("Content-Encoding", "gzip")
+                    .body("size()", greaterThanOrEqualTo(52));
+
+            HttpClient client = HttpClient.newHttpClient();
+            HttpResponse<byte[]> page = client.send(HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees"))
+                    .header("Accept-Encoding", "zstd, gzip")
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            Assert.assertEquals("zstd", page.headers().firstValue("Content-Encoding").orElse(null));
+            try (ZstdInputStream json = new ZstdInputStream(new ByteArrayInputStream(page.body()))) {
+                String body = new String(json.readAllBytes(), StandardCharsets.UTF_8);
+                Assert.assertTrue(body, body.contains("fiona49.format@example.com"));
+            }
+
+            //ответ короче server.compression.min-response-size не сжимается
+            HttpResponse<byte[]> single = client.send(HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees/" + id))
+                    .header("Accept-Encoding", "zstd")
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            Assert.assertTrue(single.headers().firstValue("Content-Encoding").isEmpty());
+            Assert.assertEquals(String.valueOf(single.body().length), single.headers().firstValue("Content-Length").orElse(null));
+        } finally {
+            jdbcTemplate.update("DELETE FROM employees WHERE lastname = 'Format'");
+        }
+    }
+
+    @Test
+    public void shouldWriteIngestedEmployeesBehindAndReportTheirStatus() {
+        try {
+            String location = RestAssured.given()
+                    .contentType("application/json")
+                    .body(Map.of("firstName", "Ian", "lastName", "Ingest", "email", "ian.ingest@example.com"))
+                    .post(getRootUrl() + "/employees:ingest")
+                    .then()
+                    .statusCode(202)
+                    .body("state", equalTo("QUEUED"))
+                    .extract().header("Location");
+            //дубликат email: группа откатывается, запись отклоняется по одной, остальные сохраняются
+            String duplicate = RestAssured.given()
+                    .contentType("application/json")
+                    .body(Map.of("firstName", "John", "lastName", "Ingest", "email", "john.doe@example.com"))
+                    .post(getRootUrl() + "/employees:ingest")
+                    .then()
+                    .statusCode(202)
+                    .extract().header("Location");
+
+            Awaitility.await().atMost(Durations.TEN_SECONDS).untilAsserted(() -> RestAssured.given()
+                    .get(location)
+                    .then()
+                    .statusCode(200)
+                    .body("state", equalTo("WRITTEN")));
+            long id = RestAssured.given().get(location).then().extract().jsonPath().getLong("employeeId");
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200)
+                    .body("email", equalTo("ian.ingest@example.com"));
+
+            Awaitility.await().atMost(Durations.TEN_SECONDS).untilAsserted(() -> RestAssured.given()
+                    .get(duplicate)
+                    .then()
+                    .statusCode(200)
+                    .body("state", equalTo("FAILED"))
+                    .body("error", equalTo("Employee with this email already exists")));
+
+            RestAssured.given()
+                    .contentType("application/json")
+                    .body(Map.of("firstName", "", "lastName", "Ingest", "email", "blank.ingest@example.com"))
+                    .post(getRootUrl() + "/employees:ingest")
+                    .then()
+                    .statusCode(400);
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees:ingest/" + UUID.randomUUID())
+                    .then()
+                    .statusCode(404);
+        } finally {
+            jdbcTemplate.update("DELETE FROM employees WHERE lastname = 'Ingest'");
+        }
+    }
+
+    @Test
+    public void shouldShedExcessReadsButAdmitWritesWhileDatabaseIsStalled() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest read = HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees")).build();
+        HttpRequest write = HttpRequest.newBuilder(URI.create(getRootUrl() + "/employees"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"firstName\":\"Lena\",\"lastName\":\"Limiter\",\"email\":\"lena.limiter@example.com\"}"))
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> reads = new ArrayList<>();
+        CompletableFuture<HttpResponse<String>> created;
+        try (Connection lock = jdbcTemplate.getDataSource().getConnection()) {
+            //запросы к employees ждут блокировку, как ждали бы медленную базу
+            lock.setAutoCommit(false);
+            try (Statement statement = lock.createStatement()) {
+                statement.execute("LOCK TABLE employees IN ACCESS EXCLUSIVE MODE");
+            }
+            try {
+                for (int i = 0; i < 12; i++) {
+                    reads.add(client.sendAsync(read, HttpResponse.BodyHandlers.ofString()));
+                }
+                //4 чтения заняли лимит, остальные отклоняются сразу, не дожидаясь базы
+                Awaitility.await().atMost(Durations.TEN_SECONDS)
+                        .until(() -> reads.stream().filter(CompletableFuture::isDone).count() == 8);
+
+                //запись не заняла свою долю лимита и допускается, хотя лимит исчерпан чтениями
+                created = client.sendAsync(write, HttpResponse.BodyHandlers.ofString());
+                Awaitility.await().during(Durations.FIVE_HUNDRED_MILLISECONDS).atMost(Durations.TWO_SECONDS)
+                        .until(() -> !created.isDone());
+            } finally {
+                lock.rollback();
+            }
+        }
+        try {
+            List<HttpResponse<String>> responses = reads.stream().map(CompletableFuture::join).toList();
+            Assert.assertEquals(4, responses.stream().filter(response -> response.statusCode() == 200).count());
+            List<HttpResponse<String>> rejected = responses.stream()
+                    .filter(response -> response.statusCode() == 503)
+                    .toList();
+            Assert.assertEquals(8, rejected.size());
+            rejected.forEach(response -> Assert.assertEquals("1",
+                    response.headers().firstValue("Retry-After").orElse(null)));
+            Assert.assertEquals(200, created.join().statusCode());
+
+            RestAssured.given()
+                    .queryParam("tag", "operation:read")
+                    .get("http://localhost:" + port + "/actuator/metrics/employees.concurrency.rejected")
+                    .then()
+                    .statusCode(200)
+                    .body("measurements[0].value", greaterThanOrEqualTo(8.0f));
+        } finally {
+            jdbcTemplate.update("DELETE FROM employees WHERE lastname = 'Limiter'");
+        }
+    }
+
+    /**
+     * Строки следующего SSE-события без комментариев (heartbeat)
+     */
+    private static List<String> nextEvent(Iterator<String> lines) {
+        List<String> event = new ArrayList<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty()) {
+                if (!event.isEmpty()) {
+                    return event;
+                }
+            } else if (!line.startsWith(":")) {
+                event.add(line);
+            }
+        }
+        return event;
+    }
+
+    /**
+     * email сотрудников из сообщения EmployeeList (src/main/proto/employee.proto)
+     */
+    private static List<String> protobufEmails(byte[] message) throws IOException {
+        List<String> emails = new ArrayList<>();
+        CodedInputStream input = CodedInputStream.newInstance(message);
+        while (!input.isAtEnd()) {
+            Assert.assertEquals(1, WireFormat.getTagFieldNumber(input.readTag()));
+            int limit = input.pushLimit(input.readRawVarint32());
+            while (!input.isAtEnd()) {
+                int tag = input.readTag();
+                if (WireFormat.getTagFieldNumber(tag) == 4) {
+                    emails.add(input.readString());
+                } else {
+                    input.skipField(tag);
+                }
+            }
+            input.popLimit(limit);
+        }
+        return emails;
+    }
+
+    /**
+     * План запроса, который приложение выполнило во время action.
+     * Postgres на время вызова пишет в журнал текст и параметры каждого выполнения (log_statement = all),
+     * последний запрос с фрагментом fragment готовится заново и объясняется с теми же параметрами.
+     * На двух строках планировщик выбрал бы seq scan, поэтому он отключается только для EXPLAIN
+     */
+    private String explainExecuted(String fragment, Runnable action) {
+        Pattern executed = Pattern.compile(
+                "execute [^:]*: (.*" + fragment + ".*)\\R.*DETAIL:  parameters: (.*)");
+        jdbcTemplate.execute("ALTER SYSTEM SET log_statement = 'all'");
+        jdbcTemplate.execute("SELECT pg_reload_conf()");
+        String[] found = new String[2];
+        try {
+            //сигнал о перечитывании настроек доходит до соединений пула не сразу
+            Awaitility.await().atMost(Durations.TEN_SECONDS).until(() -> {
+                action.run();
+                Matcher matcher = executed.matcher(postgresContainer.getLogs());
+                while (matcher.find()) {
+                    found[0] = matcher.group(1);
+                    found[1] = matcher.group(2);
+                }
+                return found[0] != null;
+            });
+        } finally {
+            jdbcTemplate.execute("ALTER SYSTEM RESET log_statement");
+            jdbcTemplate.execute("SELECT pg_reload_conf()");
+        }
+        String sql = found[0];
+        String parameters = found[1].replaceAll("\\$\\d+ = ", "");
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET enable_seqscan = off");
+                statement.execute("PREPARE explained AS " + sql);
+                try {
+                    return explain(statement, "EXECUTE explained(" + parameters + ")");
+                } finally {
+                    statement.execute("DEALLOCATE explained");
+                    statement.execute("RESET enable_seqscan");
+                }
+            }
+        });
+    }
+
+    private static String explain(Statement statement, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
 }
@@ -0,0 +1,158 @@
+package ru.karpo.testcontainers;
+
+import io.restassured.RestAssured;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.shaded.org.awaitility.Durations;
+import org.testcontainers.utility.DockerImageName;
+import ru.karpo.testcontainers.reactive.ReactiveEmployeeApplication;
+
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Неблокирующий вариант API (WebFlux + R2DBC) поверх того же контейнера Postgres с TLS, что и в PostgresTLSTest
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReactiveEmployeeApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+public class ReactivePostgresTLSTest {
+
+    private static final String CLIENT_CERT_PATH = "src/test/resources/docker/certs/client.crt";
+    private static final String CLIENT_KEY_PATH = "src/test/resources/docker/certs/client.key";
+    private static final String ROOT_CERT_PATH = "src/test/resources/docker/certs/root.crt";
+
+    static Slf4jLogConsumer logConsumer = new Slf4jLogConsumer(LoggerFactory.getLogger("docker-output"));
+
+    static DockerImageName myImage = DockerImageName.parse("postgres-tls:latest")
+            .asCompatibleSubstituteFor("postgres");
+
+    public static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>(myImage)
+            .withDatabaseName("testdb")
+            .withUsername("postgres")
+            .withPassword("postgres123")
+            .withCommand("-c", "ssl=on",
+                    "-c", "ssl_cert_file=/var/lib/postgresql/server.crt",
+                    "-c", "ssl_key_file=/var/lib/postgresql/server.key",
+                    "-c", "ssl_ca_file=/var/lib/postgresql/root.crt",
+                    "-c", "log_destination=stderr",
+                    "-c", "logging_collector=off")
+            .withInitScript("db/init.sql")
+            .withStartupTimeout(Durations.ONE_SECOND);
+
+    /**
+     * Те же сертификаты, что и в JDBC URL PostgresTLSTest. JDBC-тест не проверяет сертификат сервера
+     * (NonValidatingFactory), в R2DBC этому соответствует sslMode=require; клиентский сертификат передаётся в обоих случаях
+     */
+    @DynamicPropertySource
+    static void registerR2dbcProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://" + postgresContainer.getHost() + ":"
+                + postgresContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/testdb"
+                + "?sslMode=require"
+                + "&sslRootCert=" + ROOT_CERT_PATH
+                + "&sslCert=" + CLIENT_CERT_PATH
+                + "&sslKey=" + CLIENT_KEY_PATH);
+        registry.add("spring.r2dbc.username", postgresContainer::getUsername);
+        registry.add("spring.r2dbc.password", postgresContainer::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeClass
+    public static void init() {
+        postgresContainer.start();
+        postgresContainer.followOutput(logConsumer);
+    }
+
+    @AfterClass
+    public static void stop() {
+        postgresContainer.stop();
+    }
+
+    private String getRootUrl() {
+        return "http://localhost:" + port + "/api/v1";
+    }
+
+    @Test
+    public void shouldStreamEmployeesOverReactiveStack() {
+        RestAssured.given()
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2))
+                .body("[0].firstName", equalTo("John"))
+                .body("[1].email", equalTo("jane.smith@example.com"));
+
+        String body = RestAssured.given()
+                .accept("application/x-ndjson")
+                .queryParam("limit", 1)
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .contentType(startsWith("application/x-ndjson"))
+                .extract().asString();
+        Assert.assertEquals(1, body.lines().count());
+    }
+
+    @Test
+    public void shouldCreateUpdateAndDeleteEmployeeWithIfMatch() {
+        long id = RestAssured.given()
+                .contentType("application/json")
+                .body(Map.of("firstName", "Max", "lastName", "Payne", "email", "max.payne@example.com"))
+                .post(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getLong("id");
+
+        String eTag = RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .extract().header("ETag");
+
+        var details = Map.of("firstName", "Max", "lastName", "Payne", "email", "payne@example.com");
+        String newETag = RestAssured.given()
+                .contentType("application/json")
+                .header("If-Match", eTag)
+                .body(details)
+                .put(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .extract().header("ETag");
+
+        RestAssured.given()
+                .contentType("application/json")
+                .header("If-Match", eTag)
+                .body(details)
+                .put(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(412);
+
+        RestAssured.given()
+                .header("If-Match", newETag)
+                .delete(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .body("deleted", is(true));
+
+        RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(404);
+    }
+}
@@ -0,0 +1,238 @@
+package ru.karpo.testcontainers;
+
+import io.restassured.RestAssured;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.shaded.org.awaitility.Awaitility;
+import org.testcontainers.shaded.org.awaitility.Durations;
+import org.testcontainers.utility.DockerImageName;
+import org.testcontainers.utility.MountableFile;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Чтение с реплики: primary и потоковая реплика в двух контейнерах одной сети.
+ * <p>
+ * Реплика снимает копию primary через pg_basebackup (src/test/resources/docker/replica-entrypoint.sh)
+ * и дальше получает WAL по потоковой репликации. Приложение пишет в primary, а GET-запросы читает с реплики,
+ * пока её отставание не превысит datasource.replicas.max-lag
+ * <p>
+ * Перед тестом соберите образ "postgres-tls" скриптом src/test/resources/docker/docker-build.sh
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = DemoApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ReadReplicaRoutingTest {
+
+    private static final Logger dockerLogger = LoggerFactory.getLogger("docker-output");
+    private static final Slf4jLogConsumer logConsumer = new Slf4jLogConsumer(dockerLogger);
+
+    static DockerImageName myImage = DockerImageName.parse("postgres-tls:latest")
+            .asCompatibleSubstituteFor("postgres");
+
+    private static final String DATABASE_NAME = "testdb";
+    private static final String DB_USER = "postgres";
+    private static final String DB_PASSWORD = "postgres123";
+    private static final String PRIMARY_ALIAS = "primary";
+    private static final Duration MAX_LAG = Duration.ofSeconds(2);
+
+    private static final Network network = Network.newNetwork();
+
+    public static PostgreSQLContainer<?> primaryContainer = new PostgreSQLContainer<>(myImage)
+            .withNetwork(network)
+            .withNetworkAliases(PRIMARY_ALIAS)
+            .withDatabaseName(DATABASE_NAME)
+            .withUsername(DB_USER)
+            .withPassword(DB_PASSWORD)
+            .withCommand("-c", "log_destination=stderr", "-c", "logging_collector=off")
+            //скрипты из docker-entrypoint-initdb.d выполняются один раз при создании базы
+            .withCopyFileToContainer(MountableFile.forClasspathResource("docker/replication-hba.sh", 0755),
+                    "/docker-entrypoint-initdb.d/replication-hba.sh")
+            .withInitScript("db/init.sql")
+            .withStartupTimeout(Durations.ONE_MINUTE);
+
+    public static PostgreSQLContainer<?> replicaContainer = new PostgreSQLContainer<>(myImage)
+            .withNetwork(network)
+            .withDatabaseName(DATABASE_NAME)
+            .withUsername(DB_USER)
+            .withPassword(DB_PASSWORD)
+            .withEnv("PRIMARY_HOST", PRIMARY_ALIAS)
+            .withEnv("PGPASSWORD", DB_PASSWORD)
+            .withCopyFileToContainer(MountableFile.forClasspathResource("docker/replica-entrypoint.sh", 0755),
+                    "/usr/local/bin/replica-entrypoint.sh")
+            .withCreateContainerCmdModifier(cmd -> cmd.withEntrypoint("replica-entrypoint.sh"))
+            //standby пишет о готовности один раз и только для read-only подключений
+            .waitingFor(Wait.forLogMessage(".*database system is ready to accept read-only connections.*\\s", 1))
+            .withStartupTimeout(Durations.ONE_MINUTE);
+
+    @DynamicPropertySource
+    static void registerPgProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", primaryContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", primaryContainer::getUsername);
+        registry.add("spring.datasource.password", primaryContainer::getPassword);
+        registry.add("datasource.replicas.enabled", () -> "true");
+        registry.add("datasource.replicas.urls[0]", replicaContainer::getJdbcUrl);
+        registry.add("datasource.replicas.max-lag", MAX_LAG::toString);
+        registry.add("datasource.replicas.check-interval", () -> "200ms");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    /**
+     * Реплика стартует только после primary: pg_basebackup копирует уже наполненную базу
+     */
+    @BeforeClass
+    public static void init() {
+        primaryContainer.start();
+        primaryContainer.followOutput(logConsumer);
+        replicaContainer.start();
+        replicaContainer.followOutput(logConsumer);
+    }
+
+    @AfterClass
+    public static void stop() {
+        replicaContainer.stop();
+        primaryContainer.stop();
+        network.close();
+    }
+
+    private String getRootUrl() {
+        return "http://localhost:" + port + "/api/v1";
+    }
+
+    @Test
+    public void shouldWriteToPrimaryAndReadFromReplica() {
+        //на реплике INSERT упал бы с "cannot execute INSERT in a read-only transaction"
+        long id = createEmployee("Rita", "Replica", "rita.replica@example.com");
+
+        //?fields= читает с реплики, а полная сущность для кэша - с primary
+        Awaitility.await().atMost(Durations.TEN_SECONDS).untilAsserted(() -> RestAssured.given()
+                .queryParam("fields", "id,email")
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200));
+        RestAssured.given()
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200);
+
+        RestAssured.given()
+                .queryParam("tag", "target:replica-1")
+                .get("http://localhost:" + port + "/actuator/metrics/datasource.read.connections")
+                .then()
+                .statusCode(200)
+                .body("measurements[0].value", greaterThanOrEqualTo(2.0f));
+    }
+
+    @Test
+    public void shouldFallBackToPrimaryWhileReplicaLags() throws SQLException {
+        executeOnReplica("SELECT pg_wal_replay_pause()");
+        try {
+            long id = createEmployee("Lars", "Lag", "lars.lag@example.com");
+
+            //реплика получает WAL, но не проигрывает его: через max-lag чтение переходит на primary
+            Awaitility.await().atMost(Durations.TEN_SECONDS).untilAsserted(() -> RestAssured.given()
+                    .queryParam("fields", "id,email")
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200));
+
+            RestAssured.given()
+                    .queryParam("tag", "target:primary")
+                    .get("http://localhost:" + port + "/actuator/metrics/datasource.read.connections")
+                    .then()
+                    .statusCode(200)
+                    .body("measurements[0].value", greaterThanOrEqualTo(1.0f));
+        } finally {
+            executeOnReplica("SELECT pg_wal_replay_resume()");
+        }
+    }
+
+    /**
+     * Пока реплика стоит, она отдала бы старую строку, и кэш хранил бы её до TTL.
+     * Новый сотрудник есть только на primary, поэтому If-Match с чужой версией должен дать 412, а не 404
+     */
+    @Test
+    public void shouldReadOwnWritesByIdWhileReplicaReplayIsPaused() throws SQLException {
+        long id = createEmployee("Paula", "Paused", "paula.paused@example.com");
+        Awaitility.await().atMost(Durations.TEN_SECONDS).until(() -> existsOnReplica(id));
+        RestAssured.given()
+                .get(getRootUrl() + "/employees/" + id)
+                .then()
+                .statusCode(200)
+                .body("email", equalTo("paula.paused@example.com"));
+
+        executeOnReplica("SELECT pg_wal_replay_pause()");
+        try {
+            RestAssured.given()
+                    .contentType("application/json")
+                    .body(Map.of("firstName", "Paula", "lastName", "Paused", "email", "paula.updated@example.com"))
+                    .put(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200);
+            RestAssured.given()
+                    .get(getRootUrl() + "/employees/" + id)
+                    .then()
+                    .statusCode(200)
+                    .body("email", equalTo("paula.updated@example.com"));
+
+            long created = createEmployee("Nora", "New", "nora.new@example.com");
+            RestAssured.given()
+                    .header("If-Match", "\"999\"")
+                    .delete(getRootUrl() + "/employees/" + created)
+                    .then()
+                    .statusCode(412);
+        } finally {
+            executeOnReplica("SELECT pg_wal_replay_resume()");
+        }
+    }
+
+    private long createEmployee(String firstName, String lastName, String email) {
+        return RestAssured.given()
+                .contentType("application/json")
+                .body(Map.of("firstName", firstName, "lastName", lastName, "email", email))
+                .post(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getLong("id");
+    }
+
+    private static boolean existsOnReplica(long id) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(replicaContainer.getJdbcUrl(),
+                replicaContainer.getUsername(), replicaContainer.getPassword());
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1 FROM employees WHERE id = " + id)) {
+            return resultSet.next();
+        }
+    }
+
+    private static void executeOnReplica(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(replicaContainer.getJdbcUrl(),
+                replicaContainer.getUsername(), replicaContainer.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package ru.karpo.testcontainers;
 
 import io.restassured.RestAssured;
 import io.restassured.response.ValidatableResponse;
+import org.awaitility.Awaitility;
 import org.awaitility.Durations;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,7 +13,13 @@ import org.junit.runners.BlockJUnit4ClassRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.springframework.web.client.RestClient;
 import org.testcontainers.vault.VaultContainer;
+import ru.karpo.testcontainers.vault.VaultClient;
+import ru.karpo.testcontainers.vault.VaultSecretCache;
+
+import java.time.Clock;
+import java.time.Duration;
 
 import static org.hamcrest.Matchers.is;
 
@@ -57,4 +65,27 @@ public class VaultKeyValueTest {
                 .then().log().all(true)
                 .and().body("data.data.top_secret", is("password123"));
     }
+
+    @Test
+    public void shouldServeSecretFromLocalCacheUntilTtlExpires() throws Exception {
+        var vaultClient = new VaultClient(RestClient.builder(), vaultContainer.getHttpHostAddress(), VAULT_TOKEN);
+        try (var cache = new VaultSecretCache(vaultClient, "secret", Duration.ofSeconds(2), Duration.ofMinutes(1),
+                Duration.ofMillis(200), Clock.systemUTC())) {
+            Assert.assertEquals("value1", readThroughCache(cache));
+
+            vaultContainer.execInContainer("vault", "kv", "put", "secret/cached", "key=value2");
+            //новое значение ещё не видно: чтение обслуживается из памяти
+            Assert.assertEquals("value1", cache.get("cached", "key"));
+
+            //фоновое обновление подхватывает новую версию до истечения TTL
+            Awaitility.await().atMost(Durations.FIVE_SECONDS)
+                    .until(() -> "value2".equals(cache.get("cached", "key")));
+            Assert.assertEquals("value1", cache.get("cached", 1).get("key"));
+        }
+    }
+
+    private static String readThroughCache(VaultSecretCache cache) throws Exception {
+        vaultContainer.execInContainer("vault", "kv", "put", "secret/cached", "key=value1");
+        return cache.get("cached", "key");
+    }
 }
@@ -0,0 +1,157 @@
+package ru.karpo.testcontainers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.restassured.RestAssured;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.shaded.org.awaitility.Durations;
+import org.testcontainers.utility.DockerImageName;
+import org.testcontainers.vault.VaultContainer;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+
+/**
+ * Поле email шифруется envelope encryption: в БД лежит шифротекст, а REST API отдаёт открытый текст.
+ * Ключ данных разворачивается через Vault Transit один раз, а не на каждую строку
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = DemoApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class VaultTransitEncryptionTest {
+
+    private static final Logger dockerLogger = LoggerFactory.getLogger("docker");
+    private static final Slf4jLogConsumer logConsumer = new Slf4jLogConsumer(dockerLogger);
+    private static final String VAULT_TOKEN = "123456";
+
+    static DockerImageName myImage = DockerImageName.parse("postgres-tls:latest")
+            .asCompatibleSubstituteFor("postgres");
+
+    public static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>(myImage)
+            .withDatabaseName("testdb")
+            .withUsername("postgres")
+            .withPassword("postgres123")
+            .withCommand("-c", "log_destination=stderr", "-c", "logging_collector=off")
+            .withInitScript("db/init.sql")
+            .withStartupTimeout(Durations.ONE_SECOND);
+
+    public static VaultContainer<?> vaultContainer = new VaultContainer<>("hashicorp/vault:1.13")
+            .withVaultToken(VAULT_TOKEN)
+            .withStartupTimeout(Durations.FIVE_SECONDS)
+            .withInitCommand("secrets enable transit", "write -f transit/keys/my-key");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("vault.uri", vaultContainer::getHttpHostAddress);
+        registry.add("vault.token", () -> VAULT_TOKEN);
+        registry.add("vault.transit.enabled", () -> "true");
+        registry.add("vault.transit.key", () -> "my-key");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeClass
+    public static void init() {
+        postgresContainer.start();
+        postgresContainer.followOutput(logConsumer);
+        vaultContainer.start();
+        vaultContainer.followOutput(logConsumer);
+    }
+
+    @AfterClass
+    public static void stop() {
+        postgresContainer.stop();
+        vaultContainer.stop();
+    }
+
+    private String getRootUrl() {
+        return "http://localhost:" + port + "/api/v1";
+    }
+
+    @Test
+    public void shouldStoreEmailEncryptedAndReturnPlaintext() {
+        long transitCallsBefore = transitCalls();
+        List<Long> ids = RestAssured.given()
+                .contentType("application/json")
+                .body(List.of(
+                        Map.of("firstName", "Ann", "lastName", "Lee", "email", "ann.lee@example.com"),
+                        Map.of("firstName", "Bob", "lastName", "Ray", "email", "bob.ray@example.com")))
+                .post(getRootUrl() + "/employees:batch")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getList("id", Long.class);
+
+        List<String> stored = jdbcTemplate.queryForList(
+                "SELECT email FROM employees WHERE id IN (?, ?) ORDER BY id", String.class, ids.get(0), ids.get(1));
+        stored.forEach(email -> Assert.assertTrue(email, email.startsWith("enc:v1:")));
+        //ключ шифрования данных один, ещё один - ключ blind index для поиска по email
+        Assert.assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM employee_data_keys WHERE key_id <> 'blind-index-v1'", Integer.class).intValue());
+        List<String> lookups = jdbcTemplate.queryForList(
+                "SELECT email_lookup FROM employees WHERE id IN (?, ?)", String.class, ids.get(0), ids.get(1));
+        lookups.forEach(lookup -> Assert.assertFalse(lookup, lookup.contains("@")));
+        //ключ данных, ключ blind index и его разворачивание - не больше трёх вызовов на всю пачку
+        long transitCallsAfterWrite = transitCalls();
+        Assert.assertTrue("Transit calls: " + (transitCallsAfterWrite - transitCallsBefore),
+                transitCallsAfterWrite - transitCallsBefore <= 3);
+
+        RestAssured.given()
+                .queryParam("after", ids.get(0) - 1)
+                .get(getRootUrl() + "/employees")
+                .then()
+                .statusCode(200)
+                .body("email", everyItem(endsWith("@example.com")));
+
+        RestAssured.given()
+                .get(getRootUrl() + "/employees/" + ids.get(1))
+                .then()
+                .statusCode(200)
+                .body("email", equalTo("bob.ray@example.com"));
+
+        RestAssured.given()
+                .queryParam("email", "Bob.Ray@example.com")
+                .get(getRootUrl() + "/employees/search")
+                .then()
+                .statusCode(200)
+                .body("id", contains(ids.get(1).intValue()));
+
+        //ключи уже развёрнуты, поэтому чтение не обращается к Transit
+        Assert.assertEquals(transitCallsAfterWrite, transitCalls());
+    }
+
+    private long transitCalls() {
+        return meterRegistry.find("vault.requests").timers().stream()
+                .filter(timer -> timer.getId().getTag("path").startsWith("/transit/"))
+                .mapToLong(Timer::count)
+                .sum();
+    }
+}
@@ -0,0 +1,141 @@
+package ru.karpo.testcontainers;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.shaded.org.awaitility.Durations;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сравнение пропускной способности и p99 при высокой конкурентности: пул платформенных потоков Tomcat
+ * против обработки запросов на виртуальных потоках.
+ * <p>
+ * Приложение поднимается дважды на одной БД, нагрузка - {@value #CONCURRENCY} одновременных GET /employees.
+ * Бенчмарк долгий, поэтому запускается явно и только на Java 21:
+ * <pre>
+ * mvn -Pvirtual-threads test -Dtest=VirtualThreadsBenchmarkTest -Dbenchmark=true
+ * </pre>
+ */
+public class VirtualThreadsBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadsBenchmarkTest.class);
+    private static final Slf4jLogConsumer logConsumer = new Slf4jLogConsumer(LoggerFactory.getLogger("docker"));
+
+    private static final int CONCURRENCY = 400;
+    private static final int WARM_UP_REQUESTS = 2_000;
+    private static final int REQUESTS = 20_000;
+
+    static DockerImageName myImage = DockerImageName.parse("postgres-tls:latest")
+            .asCompatibleSubstituteFor("postgres");
+
+    public static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>(myImage)
+            .withDatabaseName("testdb")
+            .withUsername("postgres")
+            .withPassword("postgres123")
+            .withCommand("-c", "log_destination=stderr", "-c", "logging_collector=off", "-c", "max_connections=200")
+            .withInitScript("db/init.sql")
+            .withStartupTimeout(Durations.ONE_SECOND);
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @BeforeClass
+    public static void init() {
+        Assume.assumeTrue("benchmark is disabled, run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        Assume.assumeTrue("virtual threads require Java 21, run with -Pvirtual-threads", Runtime.version().feature() >= 21);
+        postgresContainer.start();
+        postgresContainer.followOutput(logConsumer);
+    }
+
+    @AfterClass
+    public static void stop() {
+        postgresContainer.stop();
+    }
+
+    @Test
+    public void compareVirtualThreadsWithPlatformThreads() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        logger.info("mode      requests/s      p50 ms      p99 ms   errors");
+        logger.info("platform  {}", platform);
+        logger.info("virtual   {}", virtual);
+
+        Assert.assertEquals(0, platform.errors());
+        Assert.assertEquals(0, virtual.errors());
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        //аргументы командной строки приоритетнее системного свойства, которое выставляет профиль virtual-threads
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class)
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.datasource.url=" + postgresContainer.getJdbcUrl(),
+                        "--spring.datasource.username=" + postgresContainer.getUsername(),
+                        "--spring.datasource.password=" + postgresContainer.getPassword())) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/api/v1/employees?limit=100");
+            load(uri, WARM_UP_REQUESTS);
+            return load(uri, REQUESTS);
+        }
+    }
+
+    private Result load(URI uri, int requests) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        long[] latencies = new long[requests];
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore permits = new Semaphore(CONCURRENCY);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            futures[i] = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        latencies[index] = System.nanoTime() - sent;
+                        if (e != null || response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                        permits.release();
+                    });
+        }
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(requests * 1_000_000_000.0 / elapsed,
+                latencies[requests / 2] / 1_000_000.0,
+                latencies[(int) Math.ceil(requests * 0.99) - 1] / 1_000_000.0,
+                errors.get());
+    }
+
+    private record Result(double throughput, double p50, double p99, int errors) {
+
+        @Override
+        public String toString() {
+            return String.format("%10.0f  %10.1f  %10.1f  %7d", throughput, p50, p99, errors);
+        }
+    }
+}
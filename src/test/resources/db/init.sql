@@ -3,10 +3,72 @@ CREATE TABLE employees (
     id SERIAL PRIMARY KEY,
     firstname VARCHAR(50),
     lastname VARCHAR(50),
-    email VARCHAR(50)
+    -- при включённом шифровании хранится enc:v1:<key_id>:<base64>, поэтому столбец шире самого адреса
+    email VARCHAR(255),
+    -- ключ поиска по email: адрес в нижнем регистре, а при включённом шифровании HMAC от него (blind index)
+    email_lookup VARCHAR(255),
+    version BIGINT NOT NULL DEFAULT 0
 );
 
-INSERT INTO employees (firstname, lastname, email) VALUES
-('John', 'Doe', 'john.doe@example.com'),
-('Jane', 'Smith', 'jane.smith@example.com');
+-- Индексы для GET /employees/search:
+-- точный email без учёта регистра (заодно запрещает дубли адресов)
+CREATE UNIQUE INDEX employees_email_lookup_uq ON employees (email_lookup);
+-- префиксный поиск lower(col) LIKE 'abc%': text_pattern_ops сравнивает побайтно, поэтому LIKE с префиксом
+-- превращается в диапазон по индексу независимо от collation базы
+CREATE INDEX employees_lastname_lower_idx ON employees (lower(lastname) text_pattern_ops);
+CREATE INDEX employees_firstname_lower_idx ON employees (lower(firstname) text_pattern_ops);
 
+-- Ключи данных для envelope encryption, обёрнутые ключом Vault Transit
+CREATE TABLE employee_data_keys (
+    key_id VARCHAR(16) PRIMARY KEY,
+    wrapped_key TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Outbox для ленты изменений (GET /employees/changes). Строки пишут statement-level триггеры через transition tables:
+-- один INSERT ... SELECT на оператор, а не на каждую строку, поэтому массовая загрузка не замедляется построчно
+CREATE TABLE employee_changes (
+    id BIGSERIAL PRIMARY KEY,
+    -- транзакция, записавшая изменение: читатель берёт только завершённые, в порядке (xid, id)
+    xid xid8 NOT NULL DEFAULT pg_current_xact_id(),
+    operation VARCHAR(6) NOT NULL,
+    employee_id BIGINT NOT NULL,
+    firstname VARCHAR(50),
+    lastname VARCHAR(50),
+    email VARCHAR(255),
+    version BIGINT,
+    created_at TIMESTAMP NOT NULL DEFAULT now()
+);
+CREATE INDEX employee_changes_xid_id_idx ON employee_changes (xid, id);
+-- удаление по сроку хранения
+CREATE INDEX employee_changes_created_at_idx ON employee_changes (created_at);
+
+CREATE FUNCTION employee_changes_capture() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        INSERT INTO employee_changes (operation, employee_id, version)
+        SELECT TG_OP, id, version FROM old_rows ORDER BY id;
+    ELSE
+        INSERT INTO employee_changes (operation, employee_id, firstname, lastname, email, version)
+        SELECT TG_OP, id, firstname, lastname, email, version FROM new_rows ORDER BY id;
+    END IF;
+    -- одинаковые уведомления в одной транзакции схлопываются, слушатель получит одно после коммита
+    PERFORM pg_notify('employee_changes', '');
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER employees_insert_changes AFTER INSERT ON employees
+    REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION employee_changes_capture();
+CREATE TRIGGER employees_update_changes AFTER UPDATE ON employees
+    REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION employee_changes_capture();
+CREATE TRIGGER employees_delete_changes AFTER DELETE ON employees
+    REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE FUNCTION employee_changes_capture();
+
+INSERT INTO employees (firstname, lastname, email, email_lookup) VALUES
+('John', 'Doe', 'john.doe@example.com', 'john.doe@example.com'),
+('Jane', 'Smith', 'jane.smith@example.com', 'jane.smith@example.com');
+
+-- Hibernate берёт id блоками по 50 (pooled optimizer), чтобы вставки можно было отправлять JDBC-батчами.
+-- Шаг последовательности должен совпадать с allocationSize в Employee
+ALTER SEQUENCE employees_id_seq INCREMENT BY 50;
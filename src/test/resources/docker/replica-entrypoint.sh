@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+# Entrypoint потоковой реплики: копия primary через pg_basebackup (-R создаёт standby.signal и primary_conninfo),
+# затем postgres в режиме hot standby. Адрес primary - в PRIMARY_HOST, пароль - в PGPASSWORD
+set -Eeo pipefail
+
+if [ "$(id -u)" = '0' ]; then
+    mkdir -p "$PGDATA"
+    chown postgres:postgres "$PGDATA"
+    chmod 700 "$PGDATA"
+    exec gosu postgres "$BASH_SOURCE" "$@"
+fi
+
+# Testcontainers передаёт CMD вида "postgres -c fsync=off"
+if [ "${1:-}" = 'postgres' ]; then
+    shift
+fi
+
+if [ ! -s "$PGDATA/PG_VERSION" ]; then
+    until pg_basebackup -h "$PRIMARY_HOST" -U "$POSTGRES_USER" -D "$PGDATA" -R -X stream; do
+        sleep 1
+    done
+fi
+exec postgres "$@"
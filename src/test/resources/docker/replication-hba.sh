@@ -0,0 +1,3 @@
+#!/usr/bin/env bash
+# Разрешает потоковую репликацию по паролю: строка "host all all all" из образа не покрывает базу replication
+echo 'host replication all all scram-sha-256' >> "$PGDATA/pg_hba.conf"